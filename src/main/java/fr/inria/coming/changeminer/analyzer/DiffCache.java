@@ -0,0 +1,279 @@
+package fr.inria.coming.changeminer.analyzer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+
+import fr.inria.coming.core.entities.EditScript;
+import fr.inria.coming.main.ComingProperties;
+import gumtree.spoon.AstComparator;
+
+/**
+ * Persistent cache of the AST diffs of pairs of file contents. The diff of a
+ * pair never changes for a given version of gumtree-spoon and configuration,
+ * so the cache is kept on disk and shared by the executions (and the
+ * repositories) that use the same folder.
+ *
+ * For each pair, the cache stores the number of root operations of its diff (or
+ * that the diff failed) and, when the diff is kept, its edit script (see
+ * {@link EditScript}). The pairs whose diff is discarded (no changes, too many
+ * or too few changes, error) are then skipped without parsing them, and the
+ * edit scripts are reused without parsing when the analyzers only read the
+ * summaries of the diffs.
+ *
+ * The entries are stored in 256 files (by the first byte of the key), loaded
+ * when they are first needed. New entries are appended to them. The edit
+ * scripts are stored in one file per pair and read on demand.
+ *
+ * @author Matias Martinez
+ *
+ */
+public class DiffCache {
+
+	public static final String HITS = "diff cache hits";
+	public static final String MISSES = "diff cache misses";
+	public static final String RECOMPUTED = "diff cache hits compared again (the next analyzers need the AST)";
+
+	/**
+	 * Number of root operations stored when the diff of a pair fails. Only the
+	 * failures that happen again with the same contents (e.g., a parse error)
+	 * are stored, not the timeouts.
+	 */
+	public static final int FAILED = -1;
+
+	private static final String WITH_SCRIPT = "s";
+
+	private static final String DIFF_VERSION = getDiffVersion();
+
+	private static Map<File, DiffCache> caches = new HashMap<>();
+
+	protected Logger log = Logger.getLogger(DiffCache.class.getName());
+
+	private File folder;
+
+	private Map<String, Map<String, Entry>> shards = new HashMap<>();
+
+	/**
+	 * Outcome of the diff of a pair
+	 */
+	public static class Entry {
+		protected int nbRootOperations;
+		protected boolean withEditScript;
+
+		public Entry(int nbRootOperations, boolean withEditScript) {
+			this.nbRootOperations = nbRootOperations;
+			this.withEditScript = withEditScript;
+		}
+
+		/**
+		 * Number of root operations, FAILED if the diff failed
+		 */
+		public int getNbRootOperations() {
+			return nbRootOperations;
+		}
+
+		public boolean hasEditScript() {
+			return withEditScript;
+		}
+	}
+
+	protected DiffCache(File folder) {
+		this.folder = folder;
+		this.folder.mkdirs();
+	}
+
+	/**
+	 * Returns the cache stored in the given folder, shared by all the analyzers
+	 * of the JVM.
+	 */
+	public static synchronized DiffCache getCache(File folder) {
+		File key;
+		try {
+			key = folder.getCanonicalFile();
+		} catch (IOException e) {
+			key = folder.getAbsoluteFile();
+		}
+		return caches.computeIfAbsent(key, DiffCache::new);
+	}
+
+	/**
+	 * Returns the cache configured by the property diff_cache_folder, null if
+	 * there is none.
+	 */
+	public static DiffCache fromProperties() {
+		String folder = ComingProperties.getProperty("diff_cache_folder");
+		if (folder == null || folder.trim().isEmpty())
+			return null;
+		return getCache(new File(folder.trim()));
+	}
+
+	/**
+	 * The diff of a pair depends on the version of gumtree-spoon and on the
+	 * configuration of the matching.
+	 */
+	protected String computeContext() {
+		Map<String, String> values = new TreeMap<>();
+		values.put("version", DIFF_VERSION);
+		values.put("GRANULARITY", ComingProperties.getProperty("GRANULARITY"));
+		values.put("scoped_diff", ComingProperties.getProperty("scoped_diff"));
+		for (String property : System.getProperties().stringPropertyNames()) {
+			if (property.startsWith("gt."))
+				values.put(property, System.getProperty(property));
+		}
+		return values.toString();
+	}
+
+	private static String getDiffVersion() {
+		Package diffPackage = AstComparator.class.getPackage();
+		if (diffPackage != null && diffPackage.getImplementationVersion() != null)
+			return diffPackage.getImplementationVersion();
+		try {
+			// e.g., gumtree-spoon-ast-diff-1.20.jar
+			return new File(AstComparator.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+					.getName();
+		} catch (Exception e) {
+			return "unknown";
+		}
+	}
+
+	public String getKey(String left, String right) {
+		return getKey(left, right, "");
+	}
+
+	/**
+	 * @param variant configuration of the diff not given by the properties (e.g.,
+	 *                the parse profile selected for the analyzers)
+	 */
+	public String getKey(String left, String right, String variant) {
+		return hash(computeContext() + variant + "\n" + hash(left) + "\n" + hash(right));
+	}
+
+	public static String hash(String content) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			byte[] bytes = digest.digest(content.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder();
+			for (byte b : bytes) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns the outcome of the diff of the pair with the given key, null if the
+	 * pair is not in the cache.
+	 */
+	public synchronized Entry get(String key) {
+		return getShard(key).get(key);
+	}
+
+	public void put(String key, int nbRootOperations) {
+		put(key, nbRootOperations, null);
+	}
+
+	/**
+	 * @param editScript edit script of the diff, null if it is not stored (e.g.,
+	 *                   the diff is discarded)
+	 */
+	public synchronized void put(String key, int nbRootOperations, EditScript editScript) {
+		Map<String, Entry> shard = getShard(key);
+		Entry previous = shard.get(key);
+		if (previous != null && (previous.hasEditScript() || editScript == null))
+			return;
+		boolean withEditScript = false;
+		if (editScript != null) {
+			// Written before the entry, so an entry never refers to a missing script
+			File file = getScriptFile(key);
+			File tmp = new File(file.getPath() + ".tmp");
+			try {
+				file.getParentFile().mkdirs();
+				Files.write(tmp.toPath(), editScript.toBytes());
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				withEditScript = true;
+			} catch (IOException e) {
+				log.error("Error writing the edit script in " + folder, e);
+				tmp.delete();
+			}
+		}
+		if (previous != null && !withEditScript)
+			return;
+		shard.put(key, new Entry(nbRootOperations, withEditScript));
+		try (Writer writer = new FileWriter(getShardFile(key), true)) {
+			writer.write(key + " " + nbRootOperations + (withEditScript ? " " + WITH_SCRIPT : "") + "\n");
+		} catch (IOException e) {
+			log.error("Error writing the diff cache in " + folder, e);
+		}
+	}
+
+	/**
+	 * Returns the edit script of the diff of the pair with the given key, null if
+	 * it is not stored or cannot be read.
+	 */
+	public EditScript getEditScript(String key) {
+		Entry entry = get(key);
+		if (entry == null || !entry.hasEditScript())
+			return null;
+		try {
+			return EditScript.fromBytes(Files.readAllBytes(getScriptFile(key).toPath()));
+		} catch (IOException e) {
+			log.error("Error reading the edit script of " + key + " in " + folder, e);
+			return null;
+		}
+	}
+
+	private Map<String, Entry> getShard(String key) {
+		String shardName = key.substring(0, 2);
+		Map<String, Entry> shard = shards.get(shardName);
+		if (shard == null) {
+			shard = new HashMap<>();
+			File file = getShardFile(key);
+			if (file.exists()) {
+				try (BufferedReader reader = Files.newBufferedReader(file.toPath())) {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						String[] entry = line.split(" ");
+						// A line can be incomplete if an execution was killed
+						if ((entry.length == 2 || entry.length == 3) && entry[0].length() == key.length()) {
+							try {
+								shard.put(entry[0], new Entry(Integer.parseInt(entry[1]),
+										entry.length == 3 && WITH_SCRIPT.equals(entry[2])));
+							} catch (NumberFormatException e) {
+								continue;
+							}
+						}
+					}
+				} catch (IOException e) {
+					log.error("Error reading the diff cache " + file, e);
+				}
+			}
+			shards.put(shardName, shard);
+		}
+		return shard;
+	}
+
+	private File getShardFile(String key) {
+		return new File(folder, key.substring(0, 2) + ".cache");
+	}
+
+	private File getScriptFile(String key) {
+		return new File(new File(folder, key.substring(0, 2)), key + ".script");
+	}
+
+	public File getFolder() {
+		return folder;
+	}
+}
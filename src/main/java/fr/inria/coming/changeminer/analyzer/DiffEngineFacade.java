@@ -1,26 +1,90 @@
 package fr.inria.coming.changeminer.analyzer;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 
 import fr.inria.coming.changeminer.entity.GranuralityType;
+import fr.inria.coming.core.engine.ParseProfile;
+import fr.inria.coming.main.ComingProperties;
+import fr.inria.coming.utils.RunSummary;
 import gumtree.spoon.AstComparator;
 import gumtree.spoon.diff.Diff;
+import spoon.compiler.SpoonModelBuilder;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.factory.Factory;
+import spoon.reflect.factory.FactoryImpl;
+import spoon.support.DefaultCoreFactory;
+import spoon.support.StandardEnvironment;
+import spoon.support.compiler.VirtualFile;
+import spoon.support.compiler.jdt.JDTBasedSpoonCompiler;
 
 /**
  * Facade for GumTree functionality. Fine granularity comparison between two
  * files according to a given granularity (JDT, CD, Spoon). It uses GT Matching
  * algorithm.
  *
+ * When comparing contents, the parsed models are kept in a LRU cache (one per
+ * thread), keyed by the hash of the content and the file name: the right
+ * version of a file in a commit is the left version in the next commit that
+ * changes it, so it is parsed only once. Each comparison gets its own copy of
+ * the cached models, as gumtree-spoon stores its trees on the elements (e.g.,
+ * the metadata "gtnode" read by the features): a diff kept in the results is
+ * not modified by the next ones.
+ *
+ * An interrupted comparison (e.g., when its deadline expires) stops between
+ * two of its steps: the matching of GumTree cannot be interrupted.
+ *
+ * With the lean profile, the comments are not built (gumtree-spoon always
+ * builds them), so the changes in the comments are not reported.
+ *
  * @author Matias Martinez, matias.martinez@inria.fr
  *
  */
 
 public class DiffEngineFacade {
 
+	public static final String HITS = "parsed AST cache hits";
+	public static final String MISSES = "parsed AST cache misses";
+	public static final String SCOPED = "scoped diffs";
+	public static final String NOT_SCOPED = "scoped diffs not possible (whole files compared)";
+	public static final String PARSE_TIME = "parse time in ms (%s profile)";
+	public static final String PARSED = "files parsed (%s profile)";
+
 	private Logger log = Logger.getLogger(DiffEngineFacade.class.getName());
 
+	/**
+	 * Maximum number of parsed types in the cache of each thread, 0 disables
+	 * the cache
+	 */
+	protected int maxParsed = 0;
+
+	protected ThreadLocal<Map<String, CtType<?>>> parsed = ThreadLocal.withInitial(() -> createCache(maxParsed));
+
+	/**
+	 * If true, only the changed methods are compared when possible (see
+	 * {@link ScopedAstComparator})
+	 */
+	protected boolean scoped = false;
+
+	protected ScopedAstComparator scopedComparator = new ScopedAstComparator();
+
+	protected ParseProfile parseProfile = ParseProfile.FULL;
+
+	public DiffEngineFacade() {
+		this.maxParsed = ComingProperties.getPropertyInteger("parsed_ast_cache_size");
+		this.scoped = ComingProperties.getPropertyBoolean("scoped_diff");
+		MatcherStrategy.fromProperties();
+	}
+
+	public DiffEngineFacade(int maxParsed) {
+		this.maxParsed = maxParsed;
+	}
+
 	public Diff compareContent(String contentL, String contentR, GranuralityType granularity) throws Exception {
 
 		AstComparator comparator = new AstComparator();
@@ -31,14 +95,150 @@ public class DiffEngineFacade {
 	public Diff compareContent(String contentL, String contentR, String nameLeft, String nameRight) throws Exception {
 
 		AstComparator comparator = new AstComparator();
-		return comparator.compare(contentL, contentR, nameLeft, nameRight);
+		if (maxParsed <= 0 && !scoped && parseProfile == ParseProfile.FULL)
+			return comparator.compare(contentL, contentR, nameLeft, nameRight);
 
+		CtType<?> left;
+		CtType<?> right;
+		if (maxParsed <= 0) {
+			left = parse(contentL, nameLeft);
+			checkInterrupted();
+			right = parse(contentR, nameRight);
+		} else {
+			String keyLeft = DiffCache.hash(contentL) + File.pathSeparator + nameLeft + File.pathSeparator
+					+ parseProfile;
+			String keyRight = DiffCache.hash(contentR) + File.pathSeparator + nameRight + File.pathSeparator
+					+ parseProfile;
+			left = getParsed(keyLeft, contentL, nameLeft);
+			checkInterrupted();
+			right = getParsed(keyRight, contentR, nameRight);
+		}
+		if (left == null || right == null) {
+			// No type in one of the contents
+			return comparator.compare(contentL, contentR, nameLeft, nameRight);
+		}
+		checkInterrupted();
+		if (scoped) {
+			Diff diff = scopedComparator.compare(left, right, contentL, contentR);
+			if (diff != null) {
+				RunSummary.increment(SCOPED);
+				return diff;
+			}
+			RunSummary.increment(NOT_SCOPED);
+		}
+		return comparator.compare(left, right);
+	}
+
+	/**
+	 * Stops a comparison whose deadline expired between two of its steps
+	 */
+	protected void checkInterrupted() throws InterruptedException {
+		if (Thread.interrupted())
+			throw new InterruptedException("Comparison cancelled");
 	}
 
 	public Diff compareFiles(File contentL, File contentR, GranuralityType granularity) throws Exception {
+		if (parseProfile != ParseProfile.FULL)
+			return compareContent(new String(Files.readAllBytes(contentL.toPath()), StandardCharsets.UTF_8),
+					new String(Files.readAllBytes(contentR.toPath()), StandardCharsets.UTF_8), contentL.getName(),
+					contentR.getName());
 		AstComparator comparator = new AstComparator();
 		return comparator.compare(contentL, contentR);
 
 	}
 
+	/**
+	 * Returns a copy of the model of a content, parsing it if it is not in the
+	 * cache. The models in the cache are never compared.
+	 */
+	protected CtType<?> getParsed(String key, String content, String name) {
+		Map<String, CtType<?>> cache = parsed.get();
+		CtType<?> type = cache.get(key);
+		if (type != null) {
+			RunSummary.increment(HITS);
+		} else {
+			RunSummary.increment(MISSES);
+			type = parse(content, name);
+			if (type == null)
+				return null;
+			cache.put(key, type);
+		}
+		return copy(type);
+	}
+
+	/**
+	 * Copies a parsed type, which keeps the package of the original one
+	 */
+	protected CtType<?> copy(CtType<?> type) {
+		CtType<?> copy = type.clone();
+		copy.setParent(type.getParent());
+		return copy;
+	}
+
+	/**
+	 * Builds the model of a content as gumtree-spoon does (with the comments
+	 * only in the full profile), returning its first type (null if there is
+	 * none).
+	 */
+	protected CtType<?> parse(String content, String name) {
+		long start = System.nanoTime();
+		try {
+			return build(content, name);
+		} finally {
+			RunSummary.add(String.format(PARSE_TIME, parseProfile.name().toLowerCase()),
+					(System.nanoTime() - start + 500000) / 1000000);
+			RunSummary.increment(String.format(PARSED, parseProfile.name().toLowerCase()));
+		}
+	}
+
+	private CtType<?> build(String content, String name) {
+		Factory factory = new FactoryImpl(new DefaultCoreFactory(), new StandardEnvironment());
+		factory.getEnvironment().setNoClasspath(true);
+		factory.getEnvironment().setCommentEnabled(parseProfile.isCommentEnabled());
+		factory.getEnvironment().setLevel("OFF");
+		factory.getModel().setBuildModelIsFinished(false);
+
+		SpoonModelBuilder compiler = new JDTBasedSpoonCompiler(factory);
+		compiler.addInputSource(new VirtualFile(content, name));
+		compiler.build();
+
+		if (factory.Type().getAll().isEmpty())
+			return null;
+		CtType<?> type = factory.Type().getAll().get(0);
+		// The factory sets up the package of the type
+		return factory.Type().get(type.getQualifiedName());
+	}
+
+	public ParseProfile getParseProfile() {
+		return parseProfile;
+	}
+
+	public void setParseProfile(ParseProfile parseProfile) {
+		this.parseProfile = parseProfile;
+	}
+
+	public boolean isScoped() {
+		return scoped;
+	}
+
+	public void setScoped(boolean scoped) {
+		this.scoped = scoped;
+	}
+
+	/**
+	 * Empties the cache of the current thread.
+	 */
+	public void clearParsed() {
+		parsed.get().clear();
+	}
+
+	@SuppressWarnings("serial")
+	private static Map<String, CtType<?>> createCache(int maxSize) {
+		return new LinkedHashMap<String, CtType<?>>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CtType<?>> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
 }
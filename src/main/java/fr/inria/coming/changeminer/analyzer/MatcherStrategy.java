@@ -0,0 +1,282 @@
+package fr.inria.coming.changeminer.analyzer;
+
+import java.lang.reflect.Field;
+
+import org.apache.log4j.Logger;
+
+import com.google.gson.JsonObject;
+
+import fr.inria.coming.main.ComingProperties;
+
+/**
+ * Presets of the thresholds of the GumTree matching used by gumtree-spoon,
+ * from the slowest (best quality) to the fastest. All of them use the same
+ * matcher (the classic GumTree one): only its thresholds change.
+ *
+ * <ul>
+ * <li>classic: the thresholds set by gumtree-spoon.</li>
+ * <li>fast: the recovery of mappings of the bottom-up phase (the most
+ * expensive step) is only done on small subtrees.</li>
+ * <li>topdown: the recovery of the bottom-up phase is disabled (gt.bum.szt is
+ * 0) and its similarity threshold is 1, so the mappings mostly come from the
+ * top-down phase. It is not a different matcher.</li>
+ * <li>custom: the thresholds given by the properties matcher_bum_smt,
+ * matcher_bum_szt and matcher_stm_mh.</li>
+ * </ul>
+ *
+ * GumTree reads its thresholds (system properties gt.*) once, when its
+ * matchers are loaded: the strategy applies to the whole JVM and must be
+ * applied before the first comparison. Applying another strategy afterwards
+ * throws an IllegalStateException (the matcher benchmark runs each strategy in
+ * its own JVM).
+ *
+ * @author Matias Martinez
+ *
+ */
+public enum MatcherStrategy {
+
+	CLASSIC, FAST, TOPDOWN, CUSTOM;
+
+	private static Logger log = Logger.getLogger(MatcherStrategy.class.getName());
+
+	private static final String MATCHERS_PACKAGE = "com.github.gumtreediff.matchers.heuristic.gt.";
+
+	/**
+	 * Strategy used by the matchers of the JVM, null if none was applied
+	 */
+	private static MatcherStrategy current = null;
+
+	private static Thresholds currentThresholds = null;
+
+	/**
+	 * Thresholds set by gumtree-spoon when it is loaded
+	 */
+	private static Thresholds defaults = null;
+
+	/**
+	 * Thresholds of the GumTree matching
+	 */
+	public static final class Thresholds {
+		/**
+		 * Similarity threshold of the bottom-up phase (gt.bum.smt)
+		 */
+		private final double similarityThreshold;
+		/**
+		 * Maximum size of the subtrees where the mappings are recovered in the
+		 * bottom-up phase (gt.bum.szt)
+		 */
+		private final int sizeThreshold;
+		/**
+		 * Minimum height of the subtrees matched in the top-down phase (gt.stm.mh)
+		 */
+		private final int minHeight;
+
+		public Thresholds(double similarityThreshold, int sizeThreshold, int minHeight) {
+			this.similarityThreshold = similarityThreshold;
+			this.sizeThreshold = sizeThreshold;
+			this.minHeight = minHeight;
+		}
+
+		public double getSimilarityThreshold() {
+			return similarityThreshold;
+		}
+
+		public int getSizeThreshold() {
+			return sizeThreshold;
+		}
+
+		public int getMinHeight() {
+			return minHeight;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Thresholds))
+				return false;
+			Thresholds other = (Thresholds) obj;
+			return Double.compare(similarityThreshold, other.similarityThreshold) == 0
+					&& sizeThreshold == other.sizeThreshold && minHeight == other.minHeight;
+		}
+
+		@Override
+		public int hashCode() {
+			return Double.hashCode(similarityThreshold) * 31 * 31 + sizeThreshold * 31 + minHeight;
+		}
+
+		@Override
+		public String toString() {
+			return "gt.bum.smt=" + similarityThreshold + ", gt.bum.szt=" + sizeThreshold + ", gt.stm.mh=" + minHeight;
+		}
+	}
+
+	/**
+	 * Applies the strategy given by the property matcher_strategy.
+	 *
+	 * @throws IllegalStateException if the matchers already use another
+	 *                               strategy
+	 */
+	public static MatcherStrategy fromProperties() {
+		MatcherStrategy strategy = getSelected();
+		strategy.apply();
+		return strategy;
+	}
+
+	/**
+	 * Returns the strategy given by the property matcher_strategy, without
+	 * applying it.
+	 */
+	public static MatcherStrategy getSelected() {
+		String name = ComingProperties.getProperty("matcher_strategy");
+		return (name == null || name.trim().isEmpty()) ? CLASSIC : MatcherStrategy.valueOf(name.trim().toUpperCase());
+	}
+
+	/**
+	 * Thresholds of the strategy (for the custom one, the ones given by the
+	 * current properties)
+	 */
+	public Thresholds getThresholds() {
+		Thresholds classic = readDefaults();
+		switch (this) {
+		case FAST:
+			return new Thresholds(classic.similarityThreshold, 100, classic.minHeight);
+		case TOPDOWN:
+			return new Thresholds(1.0, 0, classic.minHeight);
+		case CUSTOM:
+			return new Thresholds(getProperty("matcher_bum_smt", classic.similarityThreshold),
+					(int) getProperty("matcher_bum_szt", classic.sizeThreshold),
+					(int) getProperty("matcher_stm_mh", classic.minHeight));
+		default:
+			return classic;
+		}
+	}
+
+	private static double getProperty(String key, double defaultValue) {
+		String value = ComingProperties.getProperty(key);
+		return (value == null || value.trim().isEmpty()) ? defaultValue : Double.valueOf(value.trim());
+	}
+
+	/**
+	 * Returns the strategy applied, null if none was applied (the matching uses
+	 * the default values of gumtree-spoon).
+	 */
+	public static MatcherStrategy getCurrent() {
+		return current;
+	}
+
+	/**
+	 * Returns true if the matching uses the thresholds of gumtree-spoon (no
+	 * strategy applied, or one with the same thresholds as classic)
+	 */
+	public static synchronized boolean isDefault() {
+		return current == null || currentThresholds.equals(readDefaults());
+	}
+
+	/**
+	 * Description of the strategy applied, to be included in the outputs.
+	 */
+	public static synchronized JsonObject getCurrentJson() {
+		if (current == null)
+			return toJson(CLASSIC, readDefaults());
+		return toJson(current, currentThresholds);
+	}
+
+	/**
+	 * The classic strategy takes the thresholds set by gumtree-spoon when it is
+	 * loaded, before any strategy is applied.
+	 */
+	private static synchronized Thresholds readDefaults() {
+		if (defaults != null)
+			return defaults;
+		try {
+			Class.forName("gumtree.spoon.AstComparator", true, MatcherStrategy.class.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException("gumtree-spoon not found", e);
+		}
+		defaults = new Thresholds(Double.valueOf(System.getProperty("gt.bum.smt", "0.5")),
+				Integer.valueOf(System.getProperty("gt.bum.szt", "1000")),
+				Integer.valueOf(System.getProperty("gt.stm.mh", "2")));
+		return defaults;
+	}
+
+	/**
+	 * Sets the thresholds of the strategy before the GumTree matchers are
+	 * loaded, and checks that the matchers use them.
+	 *
+	 * @throws IllegalStateException if the matchers already use other
+	 *                               thresholds
+	 */
+	public void apply() {
+		synchronized (MatcherStrategy.class) {
+			Thresholds thresholds = getThresholds();
+			if (current != null) {
+				if (thresholds.equals(currentThresholds))
+					return;
+				throw new IllegalStateException("Cannot apply the matcher strategy " + this + " (" + thresholds
+						+ "): the GumTree matchers of this JVM already use the strategy " + current + " ("
+						+ currentThresholds + ")");
+			}
+			System.setProperty("gt.bum.smt", Double.toString(thresholds.similarityThreshold));
+			System.setProperty("gt.bum.szt", Integer.toString(thresholds.sizeThreshold));
+			System.setProperty("gt.stm.mh", Integer.toString(thresholds.minHeight));
+
+			Thresholds loaded = readLoadedThresholds();
+			if (loaded == null) {
+				if (!thresholds.equals(readDefaults()))
+					throw new IllegalStateException("Cannot apply the matcher strategy " + this
+							+ ": the thresholds of the GumTree matchers cannot be checked");
+				log.warn("The thresholds of the GumTree matchers cannot be checked");
+			} else if (!loaded.equals(thresholds)) {
+				throw new IllegalStateException("Cannot apply the matcher strategy " + this + " (" + thresholds
+						+ "): the GumTree matchers were loaded before with " + loaded);
+			}
+			current = this;
+			currentThresholds = thresholds;
+			log.info("Matcher strategy " + this + ": " + thresholds);
+		}
+	}
+
+	/**
+	 * Loads the GumTree matchers and returns the thresholds they read, null if
+	 * they are not found
+	 */
+	private static Thresholds readLoadedThresholds() {
+		Number similarity = readThreshold("SIM_THRESHOLD", "AbstractBottomUpMatcher", "GreedyBottomUpMatcher");
+		Number size = readThreshold("SIZE_THRESHOLD", "AbstractBottomUpMatcher", "GreedyBottomUpMatcher");
+		Number minHeight = readThreshold("MIN_HEIGHT", "AbstractSubtreeMatcher", "GreedySubtreeMatcher");
+		if (similarity == null || size == null || minHeight == null)
+			return null;
+		return new Thresholds(similarity.doubleValue(), size.intValue(), minHeight.intValue());
+	}
+
+	/**
+	 * Reads a threshold of a GumTree matcher, declared in one of the given
+	 * classes (which are loaded if they are not)
+	 */
+	private static Number readThreshold(String fieldName, String... classNames) {
+		for (String className : classNames) {
+			try {
+				Class<?> matcherClass = Class.forName(MATCHERS_PACKAGE + className, true,
+						MatcherStrategy.class.getClassLoader());
+				Field field = matcherClass.getDeclaredField(fieldName);
+				field.setAccessible(true);
+				return (Number) field.get(null);
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				log.debug("Could not read " + className + "." + fieldName + ": " + e);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Description of the strategy with its thresholds, to be included in the
+	 * outputs.
+	 */
+	public static JsonObject toJson(MatcherStrategy strategy, Thresholds thresholds) {
+		JsonObject json = new JsonObject();
+		json.addProperty("strategy", strategy.name().toLowerCase());
+		json.addProperty("gt.bum.smt", thresholds.similarityThreshold);
+		json.addProperty("gt.bum.szt", thresholds.sizeThreshold);
+		json.addProperty("gt.stm.mh", thresholds.minHeight);
+		return json;
+	}
+}
@@ -0,0 +1,132 @@
+package fr.inria.coming.changeminer.analyzer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.eclipse.compare.rangedifferencer.RangeDifference;
+
+import fr.inria.coming.changeminer.analyzer.instancedetector.MegaDiff;
+import fr.inria.coming.core.filter.diff.syntcomparison.FragmentableComparator;
+import fr.inria.coming.core.filter.diff.syntcomparison.SpaceInsensitiveLineComparator;
+import gumtree.spoon.AstComparator;
+import gumtree.spoon.diff.Diff;
+import spoon.reflect.code.CtLambda;
+import spoon.reflect.cu.SourcePosition;
+import spoon.reflect.declaration.CtAnonymousExecutable;
+import spoon.reflect.declaration.CtExecutable;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.visitor.filter.TypeFilter;
+
+/**
+ * Compares only the methods and constructors changed between two versions of a
+ * file, instead of the whole files. The changed lines are found by a line diff:
+ * when all of them are inside methods or constructors present in both
+ * versions, at the same place, only those executables are matched and the
+ * result is the merge of their diffs.
+ *
+ * Otherwise (e.g., a change in a field or an import, a method added, removed,
+ * moved or whose signature changed), null is returned, and the whole files
+ * must be compared.
+ *
+ * @author Matias Martinez
+ *
+ */
+public class ScopedAstComparator {
+
+	protected Logger log = Logger.getLogger(ScopedAstComparator.class.getName());
+
+	protected FragmentableComparator lineComparator = new SpaceInsensitiveLineComparator();
+
+	/**
+	 *
+	 * @return the diff of the changed executables, null if the whole files must
+	 *         be compared
+	 */
+	public Diff compare(CtType<?> left, CtType<?> right, String contentLeft, String contentRight) {
+		List<CtExecutable<?>> leftExecutables = getExecutables(left);
+		List<CtExecutable<?>> rightExecutables = getExecutables(right);
+		if (leftExecutables == null || rightExecutables == null)
+			return null;
+
+		// The declarations must be the same, in the same order
+		List<String> leftSignatures = getSignatures(leftExecutables);
+		if (!leftSignatures.equals(getSignatures(rightExecutables)))
+			return null;
+
+		RangeDifference[] hunks = lineComparator.compare(contentLeft, contentRight);
+		Set<Integer> changed = new LinkedHashSet<>();
+		for (RangeDifference hunk : hunks) {
+			if (hunk.kind() == RangeDifference.NOCHANGE)
+				continue;
+			// Lines start at 1
+			Integer leftIndex = findExecutable(leftExecutables, hunk.ancestorStart() + 1, hunk.ancestorEnd());
+			Integer rightIndex = findExecutable(rightExecutables, hunk.rightStart() + 1, hunk.rightEnd());
+			if (leftIndex == null || rightIndex == null || !leftIndex.equals(rightIndex))
+				return null;
+			changed.add(leftIndex);
+		}
+		if (changed.isEmpty())
+			return null;
+
+		MegaDiff diff = new MegaDiff();
+		AstComparator comparator = new AstComparator();
+		for (Integer index : changed) {
+			diff.merge(comparator.compare(leftExecutables.get(index), rightExecutables.get(index)));
+		}
+		return diff;
+	}
+
+	/**
+	 * Returns the index of the executable whose body includes all the lines of a
+	 * hunk (from startLine to endLine): its first and last lines must not be
+	 * changed. An empty hunk (the side without the lines of an insertion or a
+	 * removal) is located between endLine and endLine + 1.
+	 *
+	 * @return null if there is not such executable
+	 */
+	protected Integer findExecutable(List<CtExecutable<?>> executables, int startLine, int endLine) {
+		for (int i = 0; i < executables.size(); i++) {
+			SourcePosition position = executables.get(i).getPosition();
+			boolean inside = (endLine < startLine)
+					? position.getLine() <= endLine && position.getEndLine() > endLine
+					: position.getLine() < startLine && position.getEndLine() > endLine;
+			if (inside)
+				return i;
+		}
+		return null;
+	}
+
+	/**
+	 * Methods and constructors of the type and its nested types, excluding the
+	 * implicit ones and the ones declared inside other executables (e.g., in an
+	 * anonymous class).
+	 *
+	 * @return null if an executable has no position or is an initializer block
+	 */
+	protected List<CtExecutable<?>> getExecutables(CtType<?> type) {
+		List<CtExecutable<?>> executables = new ArrayList<>();
+		for (CtExecutable<?> executable : type.getElements(new TypeFilter<CtExecutable<?>>(CtExecutable.class))) {
+			if (executable.isImplicit() || executable instanceof CtLambda
+					|| executable.getParent(CtExecutable.class) != null)
+				continue;
+			if (executable instanceof CtAnonymousExecutable || executable.getPosition() == null
+					|| !executable.getPosition().isValidPosition())
+				return null;
+			executables.add(executable);
+		}
+		return executables;
+	}
+
+	protected List<String> getSignatures(List<CtExecutable<?>> executables) {
+		List<String> signatures = new ArrayList<>();
+		for (CtExecutable<?> executable : executables) {
+			CtType<?> parentType = executable.getParent(CtType.class);
+			signatures.add(((parentType != null) ? parentType.getQualifiedName() : "") + "#"
+					+ executable.getSignature());
+		}
+		return signatures;
+	}
+}
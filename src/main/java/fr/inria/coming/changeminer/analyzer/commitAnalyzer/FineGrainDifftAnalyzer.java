@@ -1,27 +1,38 @@
 package fr.inria.coming.changeminer.analyzer.commitAnalyzer;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 import org.apache.log4j.Logger;
 
+import fr.inria.coming.changeminer.analyzer.DiffCache;
 import fr.inria.coming.changeminer.analyzer.DiffEngineFacade;
 import fr.inria.coming.changeminer.entity.GranuralityType;
 import fr.inria.coming.changeminer.entity.IRevision;
 import fr.inria.coming.core.engine.Analyzer;
+import fr.inria.coming.core.engine.ParseProfile;
 import fr.inria.coming.core.entities.AnalysisResult;
 import fr.inria.coming.core.entities.DiffResult;
+import fr.inria.coming.core.entities.EditScript;
+import fr.inria.coming.core.entities.EditScriptResult;
 import fr.inria.coming.core.entities.RevisionResult;
 import fr.inria.coming.core.entities.interfaces.IRevisionPair;
+import fr.inria.coming.core.filter.diff.syntcomparison.JavaTokenComparator;
 import fr.inria.coming.main.ComingProperties;
+import fr.inria.coming.utils.RunSummary;
 import gumtree.spoon.diff.Diff;
 import gumtree.spoon.diff.operations.Operation;
 
@@ -38,11 +49,65 @@ public class FineGrainDifftAnalyzer implements Analyzer<IRevision> {
 
 	protected GranuralityType granularity;
 
+	protected DiffCache diffCache;
+
+	protected int nbDiffThreads = 1;
+
+	protected ExecutorService diffExecutor = null;
+
+	public static final String SKIPPED_LENGTH = "diffs skipped (file too long)";
+	public static final String SKIPPED_NODES = "diffs skipped (too many estimated nodes)";
+	public static final String SKIPPED_LINES = "diffs skipped (too many changed lines)";
+	public static final String TIMEOUTS = "diffs timed out";
+	public static final String SKIPPED_NON_SEMANTIC = "diffs skipped (only formatting, comments or imports order)";
+
+	/**
+	 * Maximum time to compare a pair of files, 0 for no deadline
+	 */
+	protected int diffTimeout = 0;
+
+	/**
+	 * Bounded executor of the comparisons with a deadline
+	 */
+	protected ExecutorService deadlineExecutor = null;
+
+	/**
+	 * Deadline of {@link #getdiffFuture(File, File)} when diff_timeout_seconds is
+	 * 0
+	 */
+	protected static final int DEFAULT_FUTURE_TIMEOUT = 30;
+
+	protected int maxFileLength = 0;
+
+	protected int maxEstimatedNodes = 0;
+
+	protected int maxChangedLines = 0;
+
+	/**
+	 * If true, the pairs with the same tokens (ignoring comments and the order of
+	 * the imports) are not compared
+	 */
+	protected boolean skipNonSemanticChanges = false;
+
+	protected JavaTokenComparator tokenComparator = new JavaTokenComparator();
+
+	/**
+	 * How the next analyzers and outputs read the result
+	 */
+	protected Usage resultUsage = Usage.FULL;
+
 	/**
 	 *
 	 */
 	public FineGrainDifftAnalyzer() {
 		granularity = GranuralityType.valueOf(ComingProperties.getProperty("GRANULARITY"));
+		diffCache = DiffCache.fromProperties();
+		nbDiffThreads = ComingProperties.getPropertyInteger("nb_diff_threads");
+		diffTimeout = ComingProperties.getPropertyInteger("diff_timeout_seconds");
+		maxFileLength = ComingProperties.getPropertyInteger("max_file_length");
+		maxEstimatedNodes = ComingProperties.getPropertyInteger("max_estimated_nodes");
+		maxChangedLines = ComingProperties.getPropertyInteger("max_changed_lines");
+		skipNonSemanticChanges = ComingProperties.getPropertyBoolean("skip_non_semantic_changes");
 	}
 
 	/**
@@ -53,25 +118,95 @@ public class FineGrainDifftAnalyzer implements Analyzer<IRevision> {
 
 		List<IRevisionPair> javaFiles = revision.getChildren();
 
-		Map<String, Diff> diffOfFiles = new HashMap<>();
-
 		log.info("\n*****\nCommit: " + revision.getName());
 
-		for (IRevisionPair<String> fileFromRevision : javaFiles) {
-
-			String left = fileFromRevision.getPreviousVersion();
-			String right = fileFromRevision.getNextVersion();
-
-			String leftName = fileFromRevision.getPreviousName();
-			String rightName = fileFromRevision.getName();
+		if (resultUsage == Usage.SUMMARY && diffCache != null) {
+			// The next consumers only read the edit scripts, which can be in the cache
+			return new EditScriptResult<IRevision>(revision, compareAll(javaFiles, this::summarize));
+		}
+		return new DiffResult<IRevision, Diff>(revision, compareAll(javaFiles, this::compare));
+	}
 
-			Diff diff = compare(left, right, leftName, rightName);
-			if (diff != null) {
-				diffOfFiles.put(fileFromRevision.getName(), diff);
+	/**
+	 * Compares the files of a revision
+	 * 
+	 * @return the outcome of each pair that is not discarded, in the order of the
+	 *         files of the revision
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	protected <D> Map<String, D> compareAll(List<IRevisionPair> javaFiles,
+			Function<IRevisionPair<String>, D> comparison) {
+		// Same order as the files of the revision
+		Map<String, D> diffOfFiles = new LinkedHashMap<>();
+
+		ExecutorService executor = getDiffExecutor();
+		if (executor == null || javaFiles.size() < 2) {
+			for (IRevisionPair<String> fileFromRevision : javaFiles) {
+
+				D diff = comparison.apply(fileFromRevision);
+				if (diff != null) {
+					diffOfFiles.put(fileFromRevision.getName(), diff);
+				}
+			}
+		} else {
+			List<Future<D>> futures = new ArrayList<>();
+			for (IRevisionPair<String> fileFromRevision : javaFiles) {
+				futures.add(executor.submit(() -> comparison.apply(fileFromRevision)));
+			}
+			for (int i = 0; i < javaFiles.size(); i++) {
+				IRevisionPair<String> fileFromRevision = javaFiles.get(i);
+				try {
+					D diff = futures.get(i).get();
+					if (diff != null) {
+						diffOfFiles.put(fileFromRevision.getName(), diff);
+					}
+				} catch (InterruptedException e) {
+					log.error("Interrupted while comparing " + fileFromRevision.getName());
+					Thread.currentThread().interrupt();
+					futures.forEach(f -> f.cancel(true));
+					break;
+				} catch (ExecutionException e) {
+					log.error("Error comparing " + fileFromRevision.getName() + ": " + e.getCause());
+				}
 			}
 		}
+		return diffOfFiles;
+	}
 
-		return new DiffResult<IRevision, Diff>(revision, diffOfFiles);
+	@SuppressWarnings("rawtypes")
+	protected Diff compare(IRevisionPair<String> fileFromRevision) {
+		String left = fileFromRevision.getPreviousVersion();
+		String right = fileFromRevision.getNextVersion();
+
+		String leftName = fileFromRevision.getPreviousName();
+		String rightName = fileFromRevision.getName();
+
+		return compare(left, right, leftName, rightName);
+	}
+
+	protected EditScript summarize(IRevisionPair<String> fileFromRevision) {
+		return summarize(fileFromRevision.getPreviousVersion(), fileFromRevision.getNextVersion(),
+				fileFromRevision.getPreviousName(), fileFromRevision.getName());
+	}
+
+	/**
+	 * Executor of the comparisons of the files of a revision, shared by all the
+	 * revisions. Null if the files are compared one after another
+	 * (nb_diff_threads is 1).
+	 */
+	protected synchronized ExecutorService getDiffExecutor() {
+		if (diffExecutor == null && nbDiffThreads > 1) {
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(nbDiffThreads, nbDiffThreads, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<>(), runnable -> {
+						Thread thread = new Thread(runnable, "coming-diff");
+						thread.setDaemon(true);
+						return thread;
+					});
+			// The threads finish when the analysis does not use them
+			executor.allowCoreThreadTimeOut(true);
+			diffExecutor = executor;
+		}
+		return diffExecutor;
 	}
 
 	@Override
@@ -89,73 +224,334 @@ public class FineGrainDifftAnalyzer implements Analyzer<IRevision> {
 	}
 
 	public Diff compare(String left, String right, String leftName, String rightName) {
-		if (!left.trim().isEmpty()) {
+		if (!isComparable(left, right, rightName))
+			return null;
+
+		String cacheKey = getCacheKey(left, right);
+		if (cacheKey != null) {
+			DiffCache.Entry cached = diffCache.get(cacheKey);
+			if (cached != null) {
+				RunSummary.increment(DiffCache.HITS);
+				// The diff of a discarded pair is not needed. A diff cannot be rebuilt
+				// from its edit script, as the next analyzers navigate the AST of its
+				// operations: the pair is compared again, without updating the cache.
+				if (!isDiffKept(cached.getNbRootOperations()))
+					return null;
+				RunSummary.increment(DiffCache.RECOMPUTED);
+				return computeDiff(left, right, leftName, rightName, null);
+			}
+			RunSummary.increment(DiffCache.MISSES);
+		}
+		return computeDiff(left, right, leftName, rightName, cacheKey);
+	}
 
-			List<Operation> operations;
+	/**
+	 * Returns the edit script of the diff of a pair, null if the diff is
+	 * discarded (see {@link #compare(String, String, String, String)}). The edit
+	 * scripts in the cache are returned without parsing the files.
+	 */
+	public EditScript summarize(String left, String right, String leftName, String rightName) {
+		if (!isComparable(left, right, rightName))
+			return null;
+
+		String cacheKey = getCacheKey(left, right);
+		if (cacheKey != null) {
+			DiffCache.Entry cached = diffCache.get(cacheKey);
+			if (cached != null && !isDiffKept(cached.getNbRootOperations())) {
+				RunSummary.increment(DiffCache.HITS);
+				return null;
+			}
+			EditScript script = (cached != null) ? diffCache.getEditScript(cacheKey) : null;
+			if (script != null) {
+				RunSummary.increment(DiffCache.HITS);
+				return script;
+			}
+			RunSummary.increment(DiffCache.MISSES);
+		}
+		Diff diff = computeDiff(left, right, leftName, rightName, cacheKey);
+		return (diff == null) ? null : EditScript.fromDiff(diff);
+	}
 
-			try {
+	/**
+	 * Checks done before looking for a pair in the cache, so the pairs discarded
+	 * by the current limits are discarded even if the cache has their diff.
+	 */
+	protected boolean isComparable(String left, String right, String rightName) {
+		if (left.trim().isEmpty())
+			return false;
+
+		String skipped = checkComplexity(left, right);
+		if (skipped != null) {
+			log.debug("FileRevision " + rightName + " discarded before the diff: " + skipped);
+			RunSummary.increment(skipped);
+			return false;
+		}
 
-				Diff diff = cdiff.compareContent(left, right, leftName, rightName);
+		if (skipNonSemanticChanges && tokenComparator.haveSameTokens(left, right)) {
+			log.debug("FileRevision " + rightName + " without semantic changes");
+			RunSummary.increment(SKIPPED_NON_SEMANTIC);
+			return false;
+		}
+		return true;
+	}
 
-				operations = diff.getRootOperations();
+	/**
+	 * Key of a pair in the diff cache, null if there is no cache
+	 */
+	protected String getCacheKey(String left, String right) {
+		if (diffCache == null)
+			return null;
+		// The keys of the full profile are the ones without variant
+		ParseProfile profile = cdiff.getParseProfile();
+		return diffCache.getKey(left, right, (profile == ParseProfile.FULL) ? "" : profile.name());
+	}
 
-				if (operations == null
-						|| operations.size() > ComingProperties.getPropertyInteger("MAX_AST_CHANGES_PER_FILE")
-						|| operations.size() < ComingProperties.getPropertyInteger("MIN_AST_CHANGES_PER_FILE")) {
-					log.debug(
-							"FileRevision with Max number of Root AST Changes. Discating it. Total:" + operations.size()
-									+ " max: " + ComingProperties.getPropertyInteger("MAX_AST_CHANGES_PER_FILE"));
-					return null;
-				}
+	/**
+	 * Computes the diff of a pair and stores its outcome in the cache
+	 * 
+	 * @param cacheKey key of the pair in the cache, null if there is no cache
+	 * @return the diff, null if it is discarded
+	 */
+	protected Diff computeDiff(String left, String right, String leftName, String rightName, String cacheKey) {
+		List<Operation> operations;
+		try {
 
-				if (operations.size() > 0) {
+			Diff diff = runWithDeadline(() -> cdiff.compareContent(left, right, leftName, rightName), diffTimeout);
 
-					return diff;
-				}
-			} catch (Exception e) {
-				log.error("Exception e: " + e);
-				e.printStackTrace();
+			operations = diff.getRootOperations();
+
+			if (cacheKey != null && operations != null) {
+				// The edit scripts of the discarded diffs are not needed
+				diffCache.put(cacheKey, operations.size(),
+						isDiffKept(operations.size()) ? EditScript.fromDiff(diff) : null);
+			}
 
+			if (operations == null
+					|| operations.size() > ComingProperties.getPropertyInteger("MAX_AST_CHANGES_PER_FILE")
+					|| operations.size() < ComingProperties.getPropertyInteger("MIN_AST_CHANGES_PER_FILE")) {
+				log.debug("FileRevision with Max number of Root AST Changes. Discating it. Total:" + operations.size()
+						+ " max: " + ComingProperties.getPropertyInteger("MAX_AST_CHANGES_PER_FILE"));
+				return null;
+			}
+
+			if (operations.size() > 0) {
+
+				return diff;
+			}
+		} catch (TimeoutException e) {
+			log.error("Timeout comparing " + rightName + " (" + diffTimeout + " seconds)");
+			RunSummary.increment(TIMEOUTS);
+		} catch (InterruptedException e) {
+			log.error("Interrupted while comparing " + rightName);
+			Thread.currentThread().interrupt();
+		} catch (OutOfMemoryError | StackOverflowError e) {
+			// The diff can succeed in another execution
+			log.error("Error comparing " + rightName + ": " + e);
+		} catch (Exception e) {
+			log.error("Exception e: " + e);
+			e.printStackTrace();
+			if (cacheKey != null) {
+				// The same contents fail in the same way
+				diffCache.put(cacheKey, DiffCache.FAILED);
 			}
 		}
 		return null;
 	}
 
+	/**
+	 * Cheap checks done before parsing a pair of files, to discard the ones too
+	 * large to be compared in a reasonable time.
+	 * 
+	 * @return the reason to discard the pair (used as counter of the run
+	 *         summary), null if the pair can be compared
+	 */
+	protected String checkComplexity(String left, String right) {
+		if (maxFileLength > 0 && Math.max(left.length(), right.length()) > maxFileLength)
+			return SKIPPED_LENGTH;
+		if (maxEstimatedNodes > 0 && Math.max(estimateNodes(left), estimateNodes(right)) > maxEstimatedNodes)
+			return SKIPPED_NODES;
+		if (maxChangedLines > 0 && countChangedLines(left, right) > maxChangedLines)
+			return SKIPPED_LINES;
+		return null;
+	}
+
+	/**
+	 * Estimation of the number of AST nodes of a content: most statements and
+	 * expressions are delimited by one of these characters.
+	 */
+	protected static int estimateNodes(String content) {
+		int nodes = 0;
+		for (int i = 0; i < content.length(); i++) {
+			switch (content.charAt(i)) {
+			case ';':
+			case '{':
+			case '(':
+			case ',':
+			case '.':
+			case '=':
+				nodes++;
+				break;
+			default:
+				break;
+			}
+		}
+		return nodes;
+	}
+
+	/**
+	 * Number of lines (ignoring indentation and empty lines) added or removed
+	 * between both contents, without considering their order.
+	 */
+	protected static int countChangedLines(String left, String right) {
+		Map<String, Integer> lines = new HashMap<>();
+		for (String line : left.split("\n")) {
+			line = line.trim();
+			if (!line.isEmpty())
+				lines.merge(line, 1, Integer::sum);
+		}
+		for (String line : right.split("\n")) {
+			line = line.trim();
+			if (!line.isEmpty())
+				lines.merge(line, -1, Integer::sum);
+		}
+		int changed = 0;
+		for (Integer count : lines.values()) {
+			changed += Math.abs(count);
+		}
+		return changed;
+	}
+
+	/**
+	 * Runs a comparison with a deadline. The comparison runs on the deadline
+	 * executor, and the caller stops waiting for it when the deadline expires:
+	 * the comparison is interrupted, but GumTree does not check it, so it is
+	 * only stopped at its next step (e.g., after parsing a file) and otherwise
+	 * runs until the end of the matching, its diff being discarded.
+	 *
+	 * @param timeout deadline in seconds, 0 to run the comparison on the calling
+	 *                thread without deadline
+	 */
+	protected Diff runWithDeadline(Callable<Diff> comparison, int timeout) throws Exception {
+		if (timeout <= 0)
+			return comparison.call();
+
+		Future<Diff> future = getDeadlineExecutor().submit(comparison);
+		try {
+			return future.get(timeout, TimeUnit.SECONDS);
+		} catch (TimeoutException | InterruptedException e) {
+			future.cancel(true);
+			throw e;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			throw e;
+		}
+	}
+
+	/**
+	 * Executor of the comparisons with a deadline, shared by all the comparisons
+	 * of the analyzer. It has two threads per thread comparing files, so the
+	 * comparisons timed out that are still running do not delay the next ones;
+	 * beyond that, the next comparisons wait in its queue (their deadline
+	 * includes that wait). Each thread has its own cache of parsed files (see
+	 * {@link DiffEngineFacade}).
+	 */
+	protected synchronized ExecutorService getDeadlineExecutor() {
+		if (deadlineExecutor == null) {
+			int nbThreads = 2 * Math.max(nbDiffThreads, 1);
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(nbThreads, nbThreads, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<>(), runnable -> {
+						Thread thread = new Thread(runnable, "coming-diff-deadline");
+						thread.setDaemon(true);
+						return thread;
+					});
+			executor.allowCoreThreadTimeOut(true);
+			deadlineExecutor = executor;
+		}
+		return deadlineExecutor;
+	}
+
+	/**
+	 * Returns true if a diff with the given number of root operations is kept
+	 * by {@link #compare(String, String, String, String)}.
+	 */
+	protected boolean isDiffKept(int nbRootOperations) {
+		return nbRootOperations > 0
+				&& nbRootOperations <= ComingProperties.getPropertyInteger("MAX_AST_CHANGES_PER_FILE")
+				&& nbRootOperations >= ComingProperties.getPropertyInteger("MIN_AST_CHANGES_PER_FILE");
+	}
+
+	/**
+	 * With SUMMARY and a diff cache, the analyzer produces an
+	 * {@link EditScriptResult}, whose edit scripts are read from the cache on a
+	 * hit
+	 */
+	@Override
+	public void setResultUsage(Usage usage) {
+		this.resultUsage = usage;
+	}
+
+	/**
+	 * The diffs do not need the comments
+	 */
+	@Override
+	public ParseProfile getParseProfile() {
+		return ParseProfile.LEAN;
+	}
+
+	/**
+	 * Sets the profile used to build the models of the files compared
+	 */
+	@Override
+	public void setParseProfile(ParseProfile profile) {
+		cdiff.setParseProfile(profile);
+	}
+
+	public DiffCache getDiffCache() {
+		return diffCache;
+	}
+
+	public void setDiffCache(DiffCache diffCache) {
+		this.diffCache = diffCache;
+	}
+
 	public Diff getDiff(File left, File right) throws Exception {
 
 		DiffEngineFacade cdiff = new DiffEngineFacade();
+		cdiff.setParseProfile(this.cdiff.getParseProfile());
 		Diff d = cdiff.compareFiles(left, right, GranuralityType.SPOON);
 		return d;
 	}
 
-	private Future<Diff> getDiffInFuture(ExecutorService executorService, File left, File right) {
-
-		Future<Diff> future = executorService.submit(() -> {
-			DiffEngineFacade cdiff = new DiffEngineFacade();
-			Diff d = cdiff.compareFiles(left, right, GranuralityType.SPOON);
-			return d;
-		});
-		return future;
-	}
-
 	public Diff getdiffFuture(File left, File right) throws Exception {
-		ExecutorService executorService = Executors.newSingleThreadExecutor();
-		Future<Diff> future = getDiffInFuture(executorService, left, right);
-
 		Diff resukltDiff = null;
+		DiffEngineFacade cdiff = new DiffEngineFacade();
+		cdiff.setParseProfile(this.cdiff.getParseProfile());
 		try {
-			resukltDiff = future.get(30, TimeUnit.SECONDS);
+			resukltDiff = runWithDeadline(() -> cdiff.compareFiles(left, right, GranuralityType.SPOON),
+					(diffTimeout > 0) ? diffTimeout : DEFAULT_FUTURE_TIMEOUT);
 		} catch (InterruptedException e) { // <-- possible error cases
 			log.error("job was interrupted");
-		} catch (ExecutionException e) {
-			log.error("caught exception: " + e.getCause());
+			Thread.currentThread().interrupt();
 		} catch (TimeoutException e) {
 			log.error("timeout");
+			RunSummary.increment(TIMEOUTS);
+		} catch (Exception e) {
+			log.error("caught exception: " + e);
 		}
 
-		executorService.shutdown();
 		return resukltDiff;
 
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Reads no previous result
+	 */
+	@Override
+	public Usage getUsage(String analyzerName) {
+		return Usage.NONE;
+	}
+
+}
@@ -10,6 +10,7 @@ import org.eclipse.compare.rangedifferencer.RangeDifference;
 import fr.inria.coming.changeminer.entity.GranuralityType;
 import fr.inria.coming.changeminer.entity.IRevision;
 import fr.inria.coming.core.engine.Analyzer;
+import fr.inria.coming.core.engine.ParseProfile;
 import fr.inria.coming.core.entities.AnalysisResult;
 import fr.inria.coming.core.entities.DiffResult;
 import fr.inria.coming.core.entities.HunkDiff;
@@ -111,4 +112,20 @@ public class HunkDifftAnalyzer implements Analyzer<IRevision> {
 		return ranges;
 	}
 
-}
\ No newline at end of file
+	/**
+	 * The hunks are computed on the lines, without models
+	 */
+	@Override
+	public ParseProfile getParseProfile() {
+		return ParseProfile.LEAN;
+	}
+
+	/**
+	 * Reads no previous result
+	 */
+	@Override
+	public Usage getUsage(String analyzerName) {
+		return Usage.NONE;
+	}
+
+}
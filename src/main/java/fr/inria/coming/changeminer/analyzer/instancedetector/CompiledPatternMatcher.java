@@ -0,0 +1,277 @@
+package fr.inria.coming.changeminer.analyzer.instancedetector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import fr.inria.coming.changeminer.analyzer.patternspecification.ChangePatternSpecification;
+import fr.inria.coming.changeminer.analyzer.patternspecification.ParentPatternEntity;
+import fr.inria.coming.changeminer.analyzer.patternspecification.PatternAction;
+import fr.inria.coming.changeminer.analyzer.patternspecification.PatternEntity;
+import fr.inria.coming.changeminer.entity.ActionType;
+import fr.inria.coming.utils.MapList;
+import gumtree.spoon.diff.Diff;
+import gumtree.spoon.diff.operations.Operation;
+import spoon.reflect.declaration.CtElement;
+
+/**
+ * Finds the instances of several patterns in one pass over the operations of a
+ * diff.
+ *
+ * The actions of the patterns are compiled into predicates (kind of action,
+ * type, value and role of the affected entity and of its parents). The actions
+ * with the same predicate, even from different patterns (e.g., the patterns of
+ * the repair tools often share "insert an If"), are evaluated once per
+ * operation. The predicates are indexed by kind of action and entity type, so
+ * an operation is only compared to the predicates that can match it. Then the
+ * instances of each pattern are computed from its mapping, as
+ * {@link DetectorChangePatternInstanceEngine} does: the instances are the same,
+ * in the same order.
+ *
+ * Once created, a matcher can be used by several threads.
+ *
+ * @author Matias Martinez
+ *
+ */
+@SuppressWarnings("rawtypes")
+public class CompiledPatternMatcher {
+
+	protected Logger log = Logger.getLogger(CompiledPatternMatcher.class.getName());
+
+	protected List<ChangePatternSpecification> patterns;
+
+	/**
+	 * The distinct predicates, by kind of action of the pattern and entity type
+	 * ("*" for any type)
+	 */
+	protected Map<ActionType, Map<String, List<Predicate>>> predicates = new EnumMap<>(ActionType.class);
+
+	protected int nbPredicates = 0;
+
+	/**
+	 * For each pattern, the predicate of each of its actions
+	 */
+	protected List<Predicate[]> predicatesOfPatterns = new ArrayList<>();
+
+	protected DetectorChangePatternInstanceEngine engine;
+
+	/**
+	 * Kinds of action of the patterns that match all the operations
+	 */
+	private static final ActionType[] ANY_ACTION_TYPES = new ActionType[] { ActionType.ANY, ActionType.UNCHANGED,
+			ActionType.UNCHANGED_HIGH_PRIORITY };
+
+	/**
+	 * Condition of an action of a pattern on an operation, shared by the actions
+	 * with the same kind and entities.
+	 */
+	protected static class Predicate {
+		int id;
+		/**
+		 * The entity of the first action compiled to this predicate
+		 */
+		PatternEntity entity;
+
+		Predicate(int id, PatternEntity entity) {
+			this.id = id;
+			this.entity = entity;
+		}
+	}
+
+	public CompiledPatternMatcher(List<ChangePatternSpecification> patterns) {
+		this(patterns, new DetectorChangePatternInstanceEngine());
+	}
+
+	public CompiledPatternMatcher(List<ChangePatternSpecification> patterns,
+			DetectorChangePatternInstanceEngine engine) {
+		this.patterns = new ArrayList<>(patterns);
+		this.engine = engine;
+		Map<List<Object>, Predicate> byKey = new HashMap<>();
+		int nbActions = 0;
+		for (ChangePatternSpecification pattern : this.patterns) {
+			List<PatternAction> actions = pattern.getAbstractChanges();
+			Predicate[] predicatesOfPattern = new Predicate[actions.size()];
+			for (int i = 0; i < actions.size(); i++) {
+				PatternAction action = actions.get(i);
+				ActionType type = engine.getOperationType(action);
+				List<Object> key = getKey(type, action.getAffectedEntity());
+				Predicate predicate = byKey.get(key);
+				if (predicate == null) {
+					predicate = new Predicate(nbPredicates++, action.getAffectedEntity());
+					byKey.put(key, predicate);
+					String entityType = action.getAffectedEntity().getEntityType();
+					predicates.computeIfAbsent(type, e -> new HashMap<>())
+							.computeIfAbsent((entityType == null) ? PatternEntity.ANY : entityType,
+									e -> new ArrayList<>())
+							.add(predicate);
+				}
+				predicatesOfPattern[i] = predicate;
+				nbActions++;
+			}
+			predicatesOfPatterns.add(predicatesOfPattern);
+		}
+		log.debug(patterns.size() + " patterns, " + nbActions + " actions compiled to " + nbPredicates
+				+ " predicates");
+	}
+
+	/**
+	 * Two actions have the same predicate if they have the same kind, and their
+	 * entities and parents the same types, values, roles and parent levels.
+	 */
+	protected List<Object> getKey(ActionType type, PatternEntity entity) {
+		List<Object> key = new ArrayList<>();
+		key.add(type);
+		while (entity != null) {
+			key.addAll(Arrays.asList(entity.getEntityType(), entity.getNewValue(), entity.getOldValue(),
+					entity.getRoleInParent()));
+			ParentPatternEntity parent = entity.getParentPatternEntity();
+			key.add((parent == null) ? -1 : parent.getParentLevel());
+			entity = (parent == null) ? null : parent.getParent();
+		}
+		return key;
+	}
+
+	/**
+	 * Returns the instances of each pattern (in the order of the patterns of the
+	 * matcher) in a diff.
+	 */
+	public List<List<ChangePatternInstance>> findPatternInstances(Diff diff) {
+		List<MatchingAction>[] matches = match(diff);
+		List<List<ChangePatternInstance>> instances = new ArrayList<>();
+		for (int p = 0; p < patterns.size(); p++) {
+			ResultMapping mapping = getMapping(patterns.get(p), predicatesOfPatterns.get(p), matches);
+			instances.add(engine.findPatternInstances(patterns.get(p), mapping));
+		}
+		return instances;
+	}
+
+	/**
+	 * Returns the number of instances of each pattern (in the order of the
+	 * patterns of the matcher) in a diff, without building them.
+	 * 
+	 * @param mode exists (0 or 1 per pattern) or count
+	 */
+	public int[] countPatternInstances(Diff diff, PatternMiningMode mode) {
+		List<MatchingAction>[] matches = match(diff);
+		int[] counts = new int[patterns.size()];
+		for (int p = 0; p < patterns.size(); p++) {
+			ResultMapping mapping = getMapping(patterns.get(p), predicatesOfPatterns.get(p), matches);
+			counts[p] = engine.countPatternInstances(patterns.get(p), mapping, mode);
+		}
+		return counts;
+	}
+
+	/**
+	 * Evaluates the predicates on the operations of a diff.
+	 * 
+	 * @return the matches of each predicate, in the order of the diff
+	 */
+	@SuppressWarnings("unchecked")
+	protected List<MatchingAction>[] match(Diff diff) {
+		List<MatchingAction>[] matches = new List[nbPredicates];
+		for (int i = 0; i < nbPredicates; i++) {
+			matches[i] = new ArrayList<>();
+		}
+
+		List<Operation> operations = diff.getAllOperations();
+		NodeSignatureCache signatures = new NodeSignatureCache();
+		List<String> labels = new ArrayList<>(4);
+		for (Operation operation : operations) {
+			labels.clear();
+			for (CtElement node : new CtElement[] { operation.getNode(), operation.getSrcNode(),
+					operation.getDstNode() }) {
+				if (node != null && !labels.contains(signatures.get(node).getLabel()))
+					labels.add(signatures.get(node).getLabel());
+			}
+			labels.add(PatternEntity.ANY);
+
+			ActionType type = OperationIndex.getActionType(operation.getAction());
+			if (type != null)
+				evaluate(operation, predicates.get(type), labels, signatures, matches);
+			for (ActionType anyType : ANY_ACTION_TYPES) {
+				evaluate(operation, predicates.get(anyType), labels, signatures, matches);
+			}
+		}
+		return matches;
+	}
+
+	private void evaluate(Operation operation, Map<String, List<Predicate>> predicatesByType, List<String> labels,
+			NodeSignatureCache signatures, List<MatchingAction>[] matches) {
+		if (predicatesByType == null)
+			return;
+		for (String label : labels) {
+			List<Predicate> candidates = predicatesByType.get(label);
+			if (candidates == null)
+				continue;
+			for (Predicate predicate : candidates) {
+				List<MatchingEntity> matching = engine.matchElements(operation, predicate.entity, signatures);
+				if (matching != null && !matching.isEmpty()) {
+					matches[predicate.id].add(new MatchingAction(operation, null, matching));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Builds the mapping of a pattern from the matches of its predicates, as
+	 * {@link DetectorChangePatternInstanceEngine#mappingActions} does.
+	 */
+	@SuppressWarnings("unchecked")
+	protected ResultMapping getMapping(ChangePatternSpecification pattern, Predicate[] predicatesOfPattern,
+			List<MatchingAction>[] matches) {
+		MapList<PatternAction, MatchingAction> mapping = new MapList<>();
+		List<PatternAction> notMapped = new ArrayList();
+		List<PatternAction> actions = pattern.getAbstractChanges();
+		for (int i = 0; i < actions.size(); i++) {
+			PatternAction patternAction = actions.get(i);
+			ActionType patternOperationType = engine.getOperationType(patternAction);
+			List<MatchingAction> matchesOfAction = matches[predicatesOfPattern[i].id];
+			for (MatchingAction match : matchesOfAction) {
+				if (patternOperationType.equals(ActionType.UNCHANGED_HIGH_PRIORITY)) {
+					notMapped.add(patternAction);
+				} else {
+					mapping.add(patternAction, new MatchingAction(match.getOperation(), patternAction,
+							getMatching(match.getMatching(), patternAction.getAffectedEntity())));
+				}
+			}
+			if (matchesOfAction.isEmpty() && !patternOperationType.isUnchanged()) {
+				notMapped.add(patternAction);
+			}
+		}
+		return new ResultMapping(mapping, notMapped);
+	}
+
+	/**
+	 * The matching of a predicate refers to the entities of the action it was
+	 * compiled from: it is copied with the entities of the given action, which
+	 * have the same structure.
+	 */
+	private List<MatchingEntity> getMatching(List<MatchingEntity> predicateMatching, PatternEntity entity) {
+		List<MatchingEntity> matching = new ArrayList<>(predicateMatching.size());
+		for (MatchingEntity matchingEntity : predicateMatching) {
+			matching.add(new MatchingEntity(matchingEntity.getAffectedNode(), entity));
+			ParentPatternEntity parent = entity.getParentPatternEntity();
+			entity = (parent == null) ? null : parent.getParent();
+		}
+		return matching;
+	}
+
+	/**
+	 * The patterns compiled (a copy of the list given to the constructor)
+	 */
+	public List<ChangePatternSpecification> getPatterns() {
+		return patterns;
+	}
+
+	/**
+	 * Number of distinct predicates of the actions of the patterns
+	 */
+	public int getNbPredicates() {
+		return nbPredicates;
+	}
+}
@@ -25,6 +25,7 @@ import fr.inria.coming.changeminer.analyzer.patternspecification.PatternRelation
 import fr.inria.coming.changeminer.entity.ActionType;
 import fr.inria.coming.main.ComingProperties;
 import fr.inria.coming.utils.MapList;
+import fr.inria.coming.utils.RunSummary;
 import gumtree.spoon.diff.Diff;
 import gumtree.spoon.diff.operations.Operation;
 import gumtree.spoon.diff.operations.UpdateOperation;
@@ -37,18 +38,50 @@ import spoon.reflect.declaration.CtElement;
  */
 public class DetectorChangePatternInstanceEngine {
 
+	public static final String CAPPED = "pattern matchings stopped (max_instances_per_diff reached)";
+
 	Logger log = Logger.getLogger(this.getClass().getName());
 
-	@SuppressWarnings({ "rawtypes", "unchecked" })
 	public List<ChangePatternInstance> findPatternInstances(ChangePatternSpecification changePatternSpecification,
 			Diff diffToAnalyze) {
+		return findPatternInstances(changePatternSpecification, diffToAnalyze, new OperationIndex(diffToAnalyze));
+	}
+
+	/**
+	 * Finds the instances of a pattern in a diff, using an index of the
+	 * operations of the diff that can be shared by several patterns.
+	 * 
+	 * @param changePatternSpecification
+	 * @param diffToAnalyze
+	 * @param index                      index of the operations of diffToAnalyze
+	 * @return
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public List<ChangePatternInstance> findPatternInstances(ChangePatternSpecification changePatternSpecification,
+			Diff diffToAnalyze, OperationIndex index) {
+
+		ResultMapping mapping = mappingActions(changePatternSpecification, index);
 
-		ResultMapping mapping = mappingActions(changePatternSpecification, diffToAnalyze);
+		if (log.isDebugEnabled()) {
+			log.debug("Diff size " + diffToAnalyze.getAllOperations().size() + ": "
+					+ diffToAnalyze.getAllOperations().stream()
+							.map(e -> e.getClass().getSimpleName() + " " + e.getSrcNode().getClass().getSimpleName())
+							.collect(Collectors.joining(" - ")));
+		}
+		return findPatternInstances(changePatternSpecification, mapping);
+	}
 
-		log.debug("Diff size " + diffToAnalyze.getAllOperations().size() + ": "
-				+ diffToAnalyze.getAllOperations().stream()
-						.map(e -> e.getClass().getSimpleName() + " " + e.getSrcNode().getClass().getSimpleName())
-						.collect(Collectors.joining(" - ")));
+	/**
+	 * Finds the instances of a pattern from the mapping between its actions and
+	 * the operations of a diff.
+	 * 
+	 * @param changePatternSpecification
+	 * @param mapping
+	 * @return
+	 */
+	@SuppressWarnings({ "unchecked" })
+	public List<ChangePatternInstance> findPatternInstances(ChangePatternSpecification changePatternSpecification,
+			ResultMapping mapping) {
 
 		log.debug("#Mapped  " + mapping.mappings.size() + " #NotMapped " + mapping.notMapped.size());
 
@@ -66,12 +99,13 @@ public class DetectorChangePatternInstanceEngine {
 	public List<ChangePatternInstance> calculateValidInstancesFromMapping(
 			ChangePatternSpecification changePatternSpecification, MapList<PatternAction, MatchingAction> matching) {
 
+		if (!ComingProperties.getPropertyBoolean("singleinstance")) {
+			return enumerateValidInstances(changePatternSpecification, matching);
+		}
+
 		List<ChangePatternInstance> instancesFinalSet = new ArrayList<>();
 
-		// All Combinations
-		List<ChangePatternInstance> instancesAllCombinations = (ComingProperties.getPropertyBoolean("singleinstance"))
-				? singleInstance(changePatternSpecification, matching)
-				: allCombinations(changePatternSpecification, matching);
+		List<ChangePatternInstance> instancesAllCombinations = singleInstance(changePatternSpecification, matching);
 
 		instancesAllCombinations = instancesAllCombinations.stream().filter(e -> validate(e))
 				.collect(Collectors.toList());
@@ -103,6 +137,203 @@ public class DetectorChangePatternInstanceEngine {
 
 	}
 
+	/**
+	 * Returns the valid instances of the combinations of the mapping, the same
+	 * (and in the same order) than filtering {@link #allCombinations}, but
+	 * without building all the combinations: the actions are bound one by one,
+	 * and a partial instance that already uses an entity twice or breaks a
+	 * relation between two bound actions is discarded with all its
+	 * combinations. As with the filter, if a combination that only fails the
+	 * unchanged actions respects all the relations, the pattern has no
+	 * instance.
+	 * 
+	 * The enumeration stops once there are max_instances_per_diff instances (0:
+	 * no limit).
+	 * 
+	 * @param changePatternSpecification
+	 * @param matching
+	 * @return
+	 */
+	public List<ChangePatternInstance> enumerateValidInstances(ChangePatternSpecification changePatternSpecification,
+			MapList<PatternAction, MatchingAction> matching) {
+		if (matching.isEmpty()) {
+			return new ArrayList<>();
+		}
+		InstanceEnumeration enumeration = new InstanceEnumeration(changePatternSpecification, matching);
+		enumeration.bind(0);
+		if (enumeration.invalidInstanceFound) {
+			return new ArrayList<>();
+		}
+		return enumeration.instances;
+	}
+
+	/**
+	 * Returns the number of instances of a pattern from the mapping between its
+	 * actions and the operations of a diff, without building them. In the exists
+	 * mode, it is 0 or 1, and the search stops at the first instance (unless the
+	 * pattern has unchanged actions, as an instance that only fails them means
+	 * the pattern has no instance).
+	 * 
+	 * @param changePatternSpecification
+	 * @param mapping
+	 * @param mode                       exists or count
+	 * @return
+	 */
+	public int countPatternInstances(ChangePatternSpecification changePatternSpecification, ResultMapping mapping,
+			PatternMiningMode mode) {
+		MapList<PatternAction, MatchingAction> matching = mapping.getMappings();
+		if (!mapping.getNotMapped().isEmpty() || matching.isEmpty()) {
+			return 0;
+		}
+		int nbInstances;
+		if (ComingProperties.getPropertyBoolean("singleinstance")) {
+			nbInstances = calculateValidInstancesFromMapping(changePatternSpecification, matching).size();
+		} else {
+			InstanceEnumeration enumeration = new InstanceEnumeration(changePatternSpecification, matching);
+			enumeration.keepInstances = false;
+			enumeration.stopAtFirst = PatternMiningMode.EXISTS.equals(mode)
+					&& enumeration.order.stream().noneMatch(e -> getOperationType(e).isUnchanged());
+			enumeration.bind(0);
+			nbInstances = (enumeration.invalidInstanceFound) ? 0 : enumeration.nbInstances;
+		}
+		return (PatternMiningMode.EXISTS.equals(mode)) ? Math.min(nbInstances, 1) : nbInstances;
+	}
+
+	/**
+	 * Backtracking over the matching actions of each pattern action. The last
+	 * pattern action is bound first, so the instances come in the order of
+	 * {@link #allCombinations} (where the first action varies the fastest).
+	 */
+	protected class InstanceEnumeration {
+
+		ChangePatternSpecification pattern;
+		MapList<PatternAction, MatchingAction> matching;
+		PatternRelations relations;
+		List<PatternAction> order;
+		int maxInstances;
+
+		ChangePatternInstance partial;
+		List<ChangePatternInstance> instances = new ArrayList<>();
+		int nbInstances = 0;
+		boolean invalidInstanceFound = false;
+		/**
+		 * False to only count the instances
+		 */
+		boolean keepInstances = true;
+		boolean stopAtFirst = false;
+
+		InstanceEnumeration(ChangePatternSpecification pattern, MapList<PatternAction, MatchingAction> matching) {
+			this.pattern = pattern;
+			this.matching = matching;
+			this.relations = pattern.calculateRelations();
+			this.order = new ArrayList<>(matching.keySet());
+			Collections.reverse(this.order);
+			this.maxInstances = ComingProperties.getPropertyInteger("max_instances_per_diff");
+			this.partial = new ChangePatternInstance(pattern);
+		}
+
+		/**
+		 * Binds the pattern action at the given depth to each of its matching
+		 * actions.
+		 * 
+		 * @return false if the enumeration must stop
+		 */
+		boolean bind(int depth) {
+			if (depth == order.size()) {
+				return complete();
+			}
+			PatternAction pa = order.get(depth);
+			for (MatchingAction matchingAction : matching.get(pa)) {
+				partial.getActionOperation().put(pa, matchingAction.getOperation());
+				partial.getMapping().put(pa, matchingAction);
+
+				boolean next = true;
+				if (checkEntitiesUsedOne(partial) && checkBoundRelations(partial, pa, relations)) {
+					next = bind(depth + 1);
+				}
+
+				partial.getActionOperation().remove(pa);
+				partial.getMapping().remove(pa);
+				if (!next) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Checks the partial instance once all the actions are bound, as
+		 * calculateValidInstancesFromMapping does (the checks only read the
+		 * actions bound and their matching), and builds the instance if it is
+		 * valid.
+		 */
+		boolean complete() {
+			if (!validate(partial)) {
+				return true;
+			}
+			if (!checkUnchangedActionAlsoUsedByOther(partial)) {
+				if (checkInvalidInstanceExistance(partial, relations)) {
+					invalidInstanceFound = true;
+					return false;
+				}
+				return true;
+			}
+			if (!checkPatternRelationsOnInstance(partial, relations)) {
+				return true;
+			}
+			nbInstances++;
+			if (keepInstances) {
+				ChangePatternInstance instance = new ChangePatternInstance(pattern);
+				for (int i = order.size() - 1; i >= 0; i--) {
+					MatchingAction matchingAction = partial.getMapping().get(order.get(i));
+					instance.addInstance(matchingAction.getPatternAction(), matchingAction.getOperation());
+					instance.getMapping().put(order.get(i), matchingAction);
+				}
+				log.debug("Instance found: \n" + instance);
+				instances.add(instance);
+			}
+			if (stopAtFirst) {
+				return false;
+			}
+			if (maxInstances > 0 && nbInstances >= maxInstances) {
+				log.debug("Max number of instances reached: " + maxInstances);
+				RunSummary.increment(CAPPED);
+				return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Returns false if a relation of the given action with another action bound
+	 * in the (partial) instance is not respected, i.e. the two actions do not
+	 * affect the same node. Such an instance is discarded by
+	 * checkPatternRelationsOnInstance and checkInvalidInstanceExistance whatever
+	 * the other actions are.
+	 */
+	private boolean checkBoundRelations(ChangePatternInstance instance, PatternAction paction,
+			PatternRelations relations) {
+		List<EntityRelation> relationsOfPatternAction = relations.getPaEntity().get(paction);
+		if (relationsOfPatternAction == null) {
+			return true;
+		}
+		for (EntityRelation entityRelation : relationsOfPatternAction) {
+			MatchingAction matchingA = instance.getMapping().get(entityRelation.getAction1());
+			MatchingAction matchingB = instance.getMapping().get(entityRelation.getAction2());
+			if (matchingA == null || matchingB == null) {
+				continue;
+			}
+			MatchingEntity meA = matchingA.getMatching().stream()
+					.filter(e -> e.patternEntity == entityRelation.getEntity()).findFirst().get();
+			MatchingEntity meB = matchingB.getMatching().stream()
+					.filter(e -> e.patternEntity == entityRelation.getEntity()).findFirst().get();
+			if (meA.getAffectedNode() != meB.getAffectedNode()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * We return a single instance, with the mapping to the first element. It can we
 	 * use when it's necessary to assert the presence of a pattern instance, but we
@@ -374,9 +605,22 @@ public class DetectorChangePatternInstanceEngine {
 	 * @param diffToAnalyze
 	 * @return
 	 */
-	@SuppressWarnings({ "rawtypes", "unchecked" })
 	public ResultMapping mappingActions(ChangePatternSpecification changePatternSpecification, Diff diffToAnalyze) {
-		List<Operation> operationsFromDiff = diffToAnalyze.getAllOperations();
+		return mappingActions(changePatternSpecification, new OperationIndex(diffToAnalyze));
+	}
+
+	/**
+	 * Creates the mapping between the elements of a pattern and the operations of
+	 * an indexed diff. Only the operations with the kind of action and the type
+	 * of entity of each action of the pattern are compared.
+	 * 
+	 * @param changePatternSpecification
+	 * @param index                      index of the operations of the diff
+	 * @return
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public ResultMapping mappingActions(ChangePatternSpecification changePatternSpecification,
+			OperationIndex index) {
 
 		MapList<PatternAction, MatchingAction> mapping = new MapList<>();
 		List<PatternAction> notMapped = new ArrayList();
@@ -385,14 +629,15 @@ public class DetectorChangePatternInstanceEngine {
 		for (PatternAction patternAction : changePatternSpecification.getAbstractChanges()) {
 			boolean mapped = false;
 			ActionType patternOperationType = getOperationType(patternAction);
-			// For each operation in the diff
-			for (Operation operation : operationsFromDiff) {
+			// For each operation in the diff that can match the action
+			for (Operation operation : index.getCandidates(patternOperationType, getTypeLabel(patternAction))) {
 
 				Action action = operation.getAction();
 				// First, match the type of the action
 				if (matchActionTypes(action, patternOperationType)) {
 					// when, match the elements affected by the action.
-					List<MatchingEntity> matching = matchElements(operation, patternAction.getAffectedEntity());
+					List<MatchingEntity> matching = matchElements(operation, patternAction.getAffectedEntity(),
+							index.getSignatures());
 
 					if (matching != null && !matching.isEmpty()) {
 						mapped = true;
@@ -425,7 +670,22 @@ public class DetectorChangePatternInstanceEngine {
 	 * @param affectedEntity
 	 * @return
 	 */
-	private List<MatchingEntity> matchElements(Operation affectedOperation, PatternEntity affectedEntity) {
+	protected List<MatchingEntity> matchElements(Operation affectedOperation, PatternEntity affectedEntity) {
+		return matchElements(affectedOperation, affectedEntity, new NodeSignatureCache());
+	}
+
+	/**
+	 * Match the element affected by an operation from the diff and the elements in
+	 * the pattern specification, reading the nodes through the signatures of the
+	 * diff
+	 * 
+	 * @param affectedOperation
+	 * @param affectedEntity
+	 * @param signatures        cache of the signatures of the nodes of the diff
+	 * @return
+	 */
+	protected List<MatchingEntity> matchElements(Operation affectedOperation, PatternEntity affectedEntity,
+			NodeSignatureCache signatures) {
 
 		List<MatchingEntity> matching = new ArrayList<>();
 
@@ -450,25 +710,24 @@ public class DetectorChangePatternInstanceEngine {
 		int i_levels = 1;
 		// Scale the parent hierarchy and check types.
 		while (currentNodeFromAction != null && i_levels <= parentLevel) {
-			String typeOfNode = getNodeLabelFromCtElement(currentNodeFromAction);
-			String valueOfNode = currentNodeFromAction.toString();
-			String roleInParent = (currentNodeFromAction.getRoleInParent() != null)
-					? currentNodeFromAction.getRoleInParent().toString().toLowerCase()
-					: "";
+			NodeSignature signature = signatures.get(currentNodeFromAction);
+			String typeOfNode = signature.getLabel();
 
 			String patternEntityValue = (matchnewvalue) ? parentEntity.getNewValue() : parentEntity.getOldValue();
+			// The value (the code of the node) and the role are only computed when the
+			// previous conditions hold, printing a node is expensive
 			if ( // type of element
 			("*".equals(parentEntity.getEntityType())
 					|| (typeOfNode != null && typeOfNode.equals(parentEntity.getEntityType())))
 					///
 					&&
 					// value of element
-					("*".equals(patternEntityValue) || (valueOfNode != null && valueOfNode.equals(patternEntityValue)))
+					("*".equals(patternEntityValue) || matchValue(signature, patternEntityValue))
 					//
 					&&
 					// role
-					("*".equals(parentEntity.getRoleInParent()) || (roleInParent != null
-							&& roleInParent.equals(parentEntity.getRoleInParent().toLowerCase())))) {
+					("*".equals(parentEntity.getRoleInParent())
+							|| matchRole(signature, parentEntity.getRoleInParent()))) {
 				MatchingEntity match = new MatchingEntity(currentNodeFromAction, parentEntity);
 				matching.add(match);
 
@@ -491,6 +750,15 @@ public class DetectorChangePatternInstanceEngine {
 
 	}
 
+	private boolean matchValue(NodeSignature signature, String patternEntityValue) {
+		String valueOfNode = signature.getValue();
+		return valueOfNode != null && valueOfNode.equals(patternEntityValue);
+	}
+
+	private boolean matchRole(NodeSignature signature, String patternEntityRole) {
+		return signature.getRoleInParent().equals(patternEntityRole.toLowerCase());
+	}
+
 	private boolean matchActionTypes(Action action, ActionType type) {
 
 		return ActionType.ANY.equals(type) || ActionType.UNCHANGED.equals(type)
@@ -517,10 +785,7 @@ public class DetectorChangePatternInstanceEngine {
 	 * @return
 	 */
 	public String getNodeLabelFromCtElement(CtElement element) {
-		String typeFromCt = element.getClass().getSimpleName();
-		if (typeFromCt.trim().isEmpty())
-			return typeFromCt;
-		return typeFromCt.substring(2, typeFromCt.length() - 4);
+		return NodeSignature.getNodeLabel(element);
 	}
 
 }
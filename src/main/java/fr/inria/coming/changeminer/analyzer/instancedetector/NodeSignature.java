@@ -0,0 +1,77 @@
+package fr.inria.coming.changeminer.analyzer.instancedetector;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import spoon.reflect.declaration.CtElement;
+
+/**
+ * What the patterns compare on a node of a diff: its label (type), its role in
+ * the parent and its value (the code of the node). The value is only computed
+ * when a pattern with a value (i.e., not "*") needs it, as printing a node
+ * prints all its children (e.g., a whole method).
+ *
+ * @author Matias Martinez
+ *
+ */
+public class NodeSignature {
+
+	/**
+	 * The labels by class of node, as they are computed from the name of the
+	 * class
+	 */
+	private static final Map<Class<?>, String> LABELS = new ConcurrentHashMap<>();
+
+	protected CtElement node;
+
+	protected String label;
+
+	protected String roleInParent = null;
+
+	protected String value = null;
+
+	public NodeSignature(CtElement node) {
+		this.node = node;
+		this.label = getNodeLabel(node);
+	}
+
+	public String getLabel() {
+		return label;
+	}
+
+	/**
+	 * The role of the node in its parent, in lower case ("" if it has no role)
+	 */
+	public String getRoleInParent() {
+		if (roleInParent == null) {
+			roleInParent = (node.getRoleInParent() != null) ? node.getRoleInParent().toString().toLowerCase() : "";
+		}
+		return roleInParent;
+	}
+
+	/**
+	 * The code of the node, printed at the first call
+	 */
+	public String getValue() {
+		if (value == null) {
+			value = node.toString();
+		}
+		return value;
+	}
+
+	/**
+	 * The label of a CtElement is the simple name of the class without the CT
+	 * prefix.
+	 *
+	 * @param element
+	 * @return
+	 */
+	public static String getNodeLabel(CtElement element) {
+		return LABELS.computeIfAbsent(element.getClass(), c -> {
+			String typeFromCt = c.getSimpleName();
+			if (typeFromCt.trim().isEmpty())
+				return typeFromCt;
+			return typeFromCt.substring(2, typeFromCt.length() - 4);
+		});
+	}
+}
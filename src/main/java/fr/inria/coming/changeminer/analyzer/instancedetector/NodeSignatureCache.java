@@ -0,0 +1,33 @@
+package fr.inria.coming.changeminer.analyzer.instancedetector;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import spoon.reflect.declaration.CtElement;
+
+/**
+ * The signatures of the nodes of a diff, computed once for all the actions and
+ * patterns matched on the diff. The nodes are compared by identity (the
+ * equality of Spoon compares the trees). A cache is not thread safe: it is
+ * created for each diff analyzed.
+ *
+ * @author Matias Martinez
+ *
+ */
+public class NodeSignatureCache {
+
+	protected Map<CtElement, NodeSignature> signatures = new IdentityHashMap<>();
+
+	public NodeSignature get(CtElement node) {
+		NodeSignature signature = signatures.get(node);
+		if (signature == null) {
+			signature = new NodeSignature(node);
+			signatures.put(node, signature);
+		}
+		return signature;
+	}
+
+	public int size() {
+		return signatures.size();
+	}
+}
@@ -0,0 +1,126 @@
+package fr.inria.coming.changeminer.analyzer.instancedetector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.gumtreediff.actions.model.Action;
+import com.github.gumtreediff.actions.model.Delete;
+import com.github.gumtreediff.actions.model.Insert;
+import com.github.gumtreediff.actions.model.Move;
+import com.github.gumtreediff.actions.model.Update;
+
+import fr.inria.coming.changeminer.entity.ActionType;
+import gumtree.spoon.diff.Diff;
+import gumtree.spoon.diff.operations.Operation;
+import spoon.reflect.declaration.CtElement;
+
+/**
+ * Index of the operations of a diff by kind of action (INS, DEL, UPD, MOV) and
+ * label of the affected node (e.g., Invocation), so the candidates of an
+ * action of a pattern are found without scanning all the operations. It is
+ * built once per diff and shared by all the patterns mined on it.
+ *
+ * An operation is indexed under the labels of its node, source node and
+ * destination node, as the node compared to a pattern entity depends on the
+ * entity (see {@link DetectorChangePatternInstanceEngine}). The candidates are
+ * then a superset of the matches, in the order of the diff.
+ *
+ * @author Matias Martinez
+ *
+ */
+@SuppressWarnings("rawtypes")
+public class OperationIndex {
+
+	protected List<Operation> operations;
+
+	protected Map<ActionType, List<Operation>> byAction = new EnumMap<>(ActionType.class);
+
+	protected Map<String, List<Operation>> byLabel = new HashMap<>();
+
+	protected Map<ActionType, Map<String, List<Operation>>> byActionAndLabel = new EnumMap<>(ActionType.class);
+
+	/**
+	 * The signatures of the nodes of the diff, shared by the patterns
+	 */
+	protected NodeSignatureCache signatures = new NodeSignatureCache();
+
+	@SuppressWarnings("unchecked")
+	public OperationIndex(Diff diff) {
+		this.operations = diff.getAllOperations();
+		for (Operation operation : operations) {
+			ActionType type = getActionType(operation.getAction());
+			if (type != null)
+				byAction.computeIfAbsent(type, e -> new ArrayList<>()).add(operation);
+
+			List<String> labels = new ArrayList<>(3);
+			for (CtElement node : new CtElement[] { operation.getNode(), operation.getSrcNode(),
+					operation.getDstNode() }) {
+				if (node == null)
+					continue;
+				String label = signatures.get(node).getLabel();
+				if (labels.contains(label))
+					continue;
+				labels.add(label);
+				byLabel.computeIfAbsent(label, e -> new ArrayList<>()).add(operation);
+				if (type != null)
+					byActionAndLabel.computeIfAbsent(type, e -> new HashMap<>())
+							.computeIfAbsent(label, e -> new ArrayList<>()).add(operation);
+			}
+		}
+	}
+
+	/**
+	 * Returns the operations that can match an action of a pattern: those with
+	 * the kind of action and a node with the given label. A wildcard entity type
+	 * ("*") returns all the operations with the kind of action.
+	 *
+	 * @param actionType kind of action of the pattern
+	 * @param entityType type of the entity affected in the pattern
+	 * @return the candidates, in the order of the diff
+	 */
+	public List<Operation> getCandidates(ActionType actionType, String entityType) {
+		boolean anyAction = ActionType.ANY.equals(actionType) || actionType.isUnchanged();
+		if (entityType == null || "*".equals(entityType)) {
+			return anyAction ? operations : byAction.getOrDefault(actionType, Collections.emptyList());
+		}
+		if (anyAction) {
+			return byLabel.getOrDefault(entityType, Collections.emptyList());
+		}
+		Map<String, List<Operation>> labels = byActionAndLabel.get(actionType);
+		return (labels == null) ? Collections.emptyList() : labels.getOrDefault(entityType, Collections.emptyList());
+	}
+
+	public List<Operation> getOperations() {
+		return operations;
+	}
+
+	public NodeSignatureCache getSignatures() {
+		return signatures;
+	}
+
+	/**
+	 * Returns the kind of an action, or null if it is not INS, DEL, UPD nor MOV
+	 */
+	public static ActionType getActionType(Action action) {
+		if (action instanceof Insert)
+			return ActionType.INS;
+		if (action instanceof Delete)
+			return ActionType.DEL;
+		if (action instanceof Update)
+			return ActionType.UPD;
+		if (action instanceof Move)
+			return ActionType.MOV;
+		return null;
+	}
+
+	/**
+	 * See {@link NodeSignature#getNodeLabel(CtElement)}
+	 */
+	public static String getNodeLabel(CtElement element) {
+		return NodeSignature.getNodeLabel(element);
+	}
+}
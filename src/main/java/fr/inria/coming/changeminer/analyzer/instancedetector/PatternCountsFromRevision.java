@@ -0,0 +1,76 @@
+package fr.inria.coming.changeminer.analyzer.instancedetector;
+
+import java.util.List;
+
+import fr.inria.coming.changeminer.analyzer.patternspecification.ChangePatternSpecification;
+import fr.inria.coming.changeminer.entity.IRevision;
+import fr.inria.coming.core.entities.AnalysisResult;
+
+/**
+ * Result of the mining of patterns in the exists and count modes (see
+ * {@link PatternMiningMode}): for each pattern, whether the revision has an
+ * instance or its number of instances (in all its diffs).
+ *
+ * @author Matias Martinez
+ *
+ */
+public class PatternCountsFromRevision extends AnalysisResult<IRevision> {
+
+	protected PatternMiningMode mode;
+
+	protected List<ChangePatternSpecification> patterns;
+
+	/**
+	 * The count of each pattern, in the order of the patterns (0 or 1 in the
+	 * exists mode)
+	 */
+	protected int[] counts;
+
+	public PatternCountsFromRevision(IRevision analyzed, PatternMiningMode mode,
+			List<ChangePatternSpecification> patterns) {
+		super(analyzed);
+		this.mode = mode;
+		this.patterns = patterns;
+		this.counts = new int[patterns.size()];
+	}
+
+	/**
+	 * Adds the counts of the patterns in one diff of the revision
+	 */
+	public void add(int[] countsOfDiff) {
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = (PatternMiningMode.EXISTS.equals(mode)) ? Math.max(counts[i], countsOfDiff[i])
+					: counts[i] + countsOfDiff[i];
+		}
+	}
+
+	public PatternMiningMode getMode() {
+		return mode;
+	}
+
+	public List<ChangePatternSpecification> getPatterns() {
+		return patterns;
+	}
+
+	public int[] getCounts() {
+		return counts;
+	}
+
+	/**
+	 * The name of the pattern at the given position, or its position if it has
+	 * no name
+	 */
+	public String getPatternName(int index) {
+		String name = patterns.get(index).getName();
+		return (name != null) ? name : "pattern_" + index;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder("PatternCountsFromRevision [" + mode.name().toLowerCase());
+		for (int i = 0; i < counts.length; i++) {
+			result.append(", " + getPatternName(i) + "=" + counts[i]);
+		}
+		return result.append("]").toString();
+	}
+}
@@ -21,6 +21,13 @@ public class PatternInstanceAnalyzer implements Analyzer {
 
 	List<ChangePatternSpecification> patternsToMine = new ArrayList();
 
+	protected CompiledPatternMatcher matcher = null;
+
+	/**
+	 * Instances (by default), or only their existence or number
+	 */
+	protected PatternMiningMode miningMode = PatternMiningMode.INSTANCES;
+
 	public PatternInstanceAnalyzer() {
 		loadPattern();
 	}
@@ -51,6 +58,14 @@ public class PatternInstanceAnalyzer implements Analyzer {
 		}
 
 		DiffResult diffResut = (DiffResult) resultFromDiffAnalysis;
+		CompiledPatternMatcher matcher = getMatcher();
+		if (!PatternMiningMode.INSTANCES.equals(miningMode)) {
+			PatternCountsFromRevision counts = new PatternCountsFromRevision(input, miningMode, matcher.getPatterns());
+			for (Object value : diffResut.getDiffOfFiles().values()) {
+				counts.add(matcher.countPatternInstances((Diff) value, miningMode));
+			}
+			return counts;
+		}
 		List<PatternInstancesFromDiff> instancesAll = new ArrayList<>();
 
 		for (Object file : diffResut.getDiffOfFiles().keySet()) {
@@ -58,11 +73,10 @@ public class PatternInstanceAnalyzer implements Analyzer {
 			Object value = diffResut.getDiffOfFiles().get(file);
 
 			Diff singleDiff = (Diff) value;
-			DetectorChangePatternInstanceEngine instanceDetector = new DetectorChangePatternInstanceEngine();
-
+			// All the patterns in one pass
 			List<ChangePatternInstance> instances = new ArrayList<>();
-			for (ChangePatternSpecification changePatternSpecification : patternsToMine) {
-				instances.addAll(instanceDetector.findPatternInstances(changePatternSpecification, singleDiff));
+			for (List<ChangePatternInstance> instancesOfPattern : matcher.findPatternInstances(singleDiff)) {
+				instances.addAll(instancesOfPattern);
 			}
 			PatternInstancesFromDiff resultDiff = new PatternInstancesFromDiff(input, instances, singleDiff,
 					file.toString());
@@ -81,6 +95,34 @@ public class PatternInstanceAnalyzer implements Analyzer {
 
 	public void setPatternsToMine(List<ChangePatternSpecification> patternToMine) {
 		this.patternsToMine = patternToMine;
+		this.matcher = null;
+	}
+
+	public PatternMiningMode getMiningMode() {
+		return miningMode;
+	}
+
+	public void setMiningMode(PatternMiningMode miningMode) {
+		this.miningMode = miningMode;
+	}
+
+	/**
+	 * The patterns are compiled once, and the matcher is shared by the revisions
+	 * (analyzed in parallel or not)
+	 */
+	protected synchronized CompiledPatternMatcher getMatcher() {
+		if (matcher == null || !matcher.getPatterns().equals(patternsToMine)) {
+			matcher = new CompiledPatternMatcher(patternsToMine);
+		}
+		return matcher;
+	}
+
+	/**
+	 * Reads the diffs
+	 */
+	@Override
+	public Usage getUsage(String analyzerName) {
+		return FineGrainDifftAnalyzer.class.getSimpleName().equals(analyzerName) ? Usage.FULL : Usage.NONE;
 	}
 
 }
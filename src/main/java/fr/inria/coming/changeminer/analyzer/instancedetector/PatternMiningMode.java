@@ -0,0 +1,31 @@
+package fr.inria.coming.changeminer.analyzer.instancedetector;
+
+import fr.inria.coming.main.ComingProperties;
+
+/**
+ * What the mining of patterns computes for each revision and pattern:
+ *
+ * <ul>
+ * <li>instances: the instances, with the operations and entities matched
+ * (default).</li>
+ * <li>exists: whether the revision has an instance: the search of a pattern in
+ * a diff stops at the first instance.</li>
+ * <li>count: the number of instances, without building them.</li>
+ * </ul>
+ *
+ * @author Matias Martinez
+ *
+ */
+public enum PatternMiningMode {
+
+	INSTANCES, EXISTS, COUNT;
+
+	/**
+	 * The mode given by the property pattern_mining_mode
+	 */
+	public static PatternMiningMode fromProperties() {
+		String name = ComingProperties.getProperty("pattern_mining_mode");
+		return (name == null || name.trim().isEmpty()) ? INSTANCES
+				: PatternMiningMode.valueOf(name.trim().toUpperCase());
+	}
+}
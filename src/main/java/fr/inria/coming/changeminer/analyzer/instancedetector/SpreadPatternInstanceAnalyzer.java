@@ -21,6 +21,13 @@ public class SpreadPatternInstanceAnalyzer implements Analyzer {
 
 	List<ChangePatternSpecification> patternsToMine = new ArrayList();
 
+	protected CompiledPatternMatcher matcher = null;
+
+	/**
+	 * Instances (by default), or only their existence or number
+	 */
+	protected PatternMiningMode miningMode = PatternMiningMode.INSTANCES;
+
 	public SpreadPatternInstanceAnalyzer() {
 		loadPattern();
 	}
@@ -51,6 +58,7 @@ public class SpreadPatternInstanceAnalyzer implements Analyzer {
 		}
 
 		DiffResult diffResut = (DiffResult) resultFromDiffAnalysis;
+		CompiledPatternMatcher matcher = getMatcher();
 		List<PatternInstancesFromDiff> instancesAll = new ArrayList<>();
 
 		MegaDiff megadiff = new MegaDiff();
@@ -61,11 +69,16 @@ public class SpreadPatternInstanceAnalyzer implements Analyzer {
 			megadiff.merge(singleDiff);
 		}
 
-		DetectorChangePatternInstanceEngine instanceDetector = new DetectorChangePatternInstanceEngine();
+		if (!PatternMiningMode.INSTANCES.equals(miningMode)) {
+			PatternCountsFromRevision counts = new PatternCountsFromRevision(input, miningMode, matcher.getPatterns());
+			counts.add(matcher.countPatternInstances(megadiff, miningMode));
+			return counts;
+		}
 
+		// All the patterns in one pass
 		List<ChangePatternInstance> instances = new ArrayList<>();
-		for (ChangePatternSpecification changePatternSpecification : patternsToMine) {
-			instances.addAll(instanceDetector.findPatternInstances(changePatternSpecification, megadiff));
+		for (List<ChangePatternInstance> instancesOfPattern : matcher.findPatternInstances(megadiff)) {
+			instances.addAll(instancesOfPattern);
 		}
 		PatternInstancesFromDiff resultDiff = new PatternInstancesFromDiff(input, instances, megadiff, "megadiff");
 		instancesAll.add(resultDiff);
@@ -81,6 +94,34 @@ public class SpreadPatternInstanceAnalyzer implements Analyzer {
 
 	public void setPatternsToMine(List<ChangePatternSpecification> patternToMine) {
 		this.patternsToMine = patternToMine;
+		this.matcher = null;
+	}
+
+	public PatternMiningMode getMiningMode() {
+		return miningMode;
+	}
+
+	public void setMiningMode(PatternMiningMode miningMode) {
+		this.miningMode = miningMode;
+	}
+
+	/**
+	 * The patterns are compiled once, and the matcher is shared by the revisions
+	 * (analyzed in parallel or not)
+	 */
+	protected synchronized CompiledPatternMatcher getMatcher() {
+		if (matcher == null || !matcher.getPatterns().equals(patternsToMine)) {
+			matcher = new CompiledPatternMatcher(patternsToMine);
+		}
+		return matcher;
+	}
+
+	/**
+	 * Reads the diffs
+	 */
+	@Override
+	public Usage getUsage(String analyzerName) {
+		return FineGrainDifftAnalyzer.class.getSimpleName().equals(analyzerName) ? Usage.FULL : Usage.NONE;
 	}
 
 }
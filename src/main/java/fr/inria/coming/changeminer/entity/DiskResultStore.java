@@ -0,0 +1,235 @@
+package fr.inria.coming.changeminer.entity;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.log4j.Logger;
+
+import fr.inria.coming.core.entities.AnalysisResult;
+import fr.inria.coming.core.entities.DiffResult;
+import fr.inria.coming.core.entities.EditScriptResult;
+import fr.inria.coming.core.entities.RevisionResult;
+
+/**
+ * Stores the results of revisions on the local disk (one compressed file per
+ * revision) using java serialization. The revision itself is not serialized:
+ * it is replaced by a placeholder and restored when the result is read.
+ *
+ * The diffs (which reference the Spoon models, not serializable) are written
+ * as their edit scripts, so they are read back as an {@link EditScriptResult}.
+ * The results of revisions with other results that are not serializable are
+ * kept in memory, with a warning for each class of these results.
+ * 
+ * @author Matias Martinez
+ *
+ */
+public class DiskResultStore<R extends IRevision> {
+
+	Logger log = Logger.getLogger(DiskResultStore.class.getName());
+
+	protected File directory = null;
+
+	protected Map<R, File> files = new HashMap<>();
+
+	protected int nbNotSerializable = 0;
+
+	/**
+	 * Classes of the results that are not serializable, so the results with them
+	 * are kept in memory without trying to write them again
+	 */
+	protected Set<Class<?>> notSerializable = new HashSet<>();
+
+	public DiskResultStore() throws IOException {
+		this(Files.createTempDirectory("coming_results").toFile());
+	}
+
+	public DiskResultStore(File directory) {
+		this.directory = directory;
+		this.directory.mkdirs();
+		this.directory.deleteOnExit();
+	}
+
+	/**
+	 * Writes the result of a revision.
+	 * 
+	 * @param revision
+	 * @param result
+	 * @return false if the result could not be stored (e.g., it is not
+	 *         serializable), so it must be kept in memory.
+	 */
+	public synchronized boolean write(R revision, RevisionResult result) {
+		RevisionResult compact = compact(result);
+		for (AnalysisResult analysisResult : compact.values()) {
+			if (analysisResult != null && notSerializable.contains(analysisResult.getClass())) {
+				nbNotSerializable++;
+				return false;
+			}
+		}
+		File file = new File(directory, "revision_" + files.size() + ".ser.gz");
+		try (ObjectOutputStream out = new RevisionOutputStream(
+				new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))), revision)) {
+			out.writeObject(compact);
+		} catch (NotSerializableException e) {
+			findNotSerializable(revision, compact);
+			nbNotSerializable++;
+			file.delete();
+			return false;
+		} catch (IOException e) {
+			log.error("Error storing the result of " + revision + ": " + e);
+			file.delete();
+			return false;
+		}
+		file.deleteOnExit();
+		files.put(revision, file);
+		return true;
+	}
+
+	/**
+	 * Copy of a result where the diffs are replaced by their edit scripts
+	 */
+	@SuppressWarnings("rawtypes")
+	protected RevisionResult compact(RevisionResult result) {
+		RevisionResult compact = new RevisionResult(result.getRelatedRevision());
+		for (Map.Entry<String, AnalysisResult> entry : result.entrySet()) {
+			AnalysisResult analysisResult = entry.getValue();
+			if (analysisResult instanceof DiffResult) {
+				EditScriptResult scripts = EditScriptResult.fromDiffResult((DiffResult) analysisResult);
+				if (scripts != null)
+					analysisResult = scripts;
+			}
+			compact.put(entry.getKey(), analysisResult);
+		}
+		return compact;
+	}
+
+	/**
+	 * Records the classes of the results of a revision that cannot be
+	 * serialized, warning that the results with them stay in memory
+	 */
+	@SuppressWarnings("rawtypes")
+	protected void findNotSerializable(R revision, RevisionResult result) {
+		for (AnalysisResult analysisResult : result.values()) {
+			if (analysisResult == null || notSerializable.contains(analysisResult.getClass()))
+				continue;
+			try (ObjectOutputStream out = new RevisionOutputStream(new OutputStream() {
+				@Override
+				public void write(int b) {
+				}
+			}, revision)) {
+				out.writeObject(analysisResult);
+			} catch (IOException e) {
+				notSerializable.add(analysisResult.getClass());
+				log.warn("The results " + analysisResult.getClass().getSimpleName() + " are not serializable ("
+						+ e.getMessage() + "): the results of the revisions with them are kept in memory,"
+						+ " which grows with the number of revisions");
+			}
+		}
+	}
+
+	public synchronized RevisionResult read(R revision) {
+		File file = files.get(revision);
+		if (file == null)
+			return null;
+		try (ObjectInputStream in = new RevisionInputStream(
+				new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))), revision)) {
+			return (RevisionResult) in.readObject();
+		} catch (IOException | ClassNotFoundException e) {
+			log.error("Error reading the result of " + revision + ": " + e);
+			return null;
+		}
+	}
+
+	public synchronized boolean contains(Object revision) {
+		return files.containsKey(revision);
+	}
+
+	public int getNbStored() {
+		return files.size();
+	}
+
+	public int getNbNotSerializable() {
+		return nbNotSerializable;
+	}
+
+	public Set<Class<?>> getNotSerializable() {
+		return notSerializable;
+	}
+
+	public synchronized void clear() {
+		for (File file : files.values()) {
+			file.delete();
+		}
+		files.clear();
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Placeholder of the revision inside the serialized result.
+	 */
+	@SuppressWarnings("serial")
+	static class RevisionPlaceholder implements Serializable {
+
+		static final RevisionPlaceholder INSTANCE = new RevisionPlaceholder();
+
+		private Object readResolve() throws ObjectStreamException {
+			return INSTANCE;
+		}
+	}
+
+	static class RevisionOutputStream extends ObjectOutputStream {
+
+		IRevision revision = null;
+
+		public RevisionOutputStream(OutputStream out, IRevision revision) throws IOException {
+			super(out);
+			this.revision = revision;
+			this.enableReplaceObject(true);
+		}
+
+		@Override
+		protected Object replaceObject(Object obj) throws IOException {
+			if (obj == revision)
+				return RevisionPlaceholder.INSTANCE;
+			return obj;
+		}
+	}
+
+	static class RevisionInputStream extends ObjectInputStream {
+
+		IRevision revision = null;
+
+		public RevisionInputStream(InputStream in, IRevision revision) throws IOException {
+			super(in);
+			this.revision = revision;
+			this.enableResolveObject(true);
+		}
+
+		@Override
+		protected Object resolveObject(Object obj) throws IOException {
+			if (obj == RevisionPlaceholder.INSTANCE)
+				return revision;
+			return obj;
+		}
+	}
+}
@@ -1,7 +1,16 @@
 package fr.inria.coming.changeminer.entity;
 
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
 
 import org.apache.log4j.Logger;
 
@@ -18,14 +27,190 @@ public class FinalResult<R extends IRevision> extends LinkedHashMap<R, RevisionR
 
 	Logger log = Logger.getLogger(CommitFinalResult.class.getName());
 
+	/**
+	 * Store where the results are spilled once there are more than
+	 * maxResultsInMemory. Null means all results are kept in memory.
+	 */
+	protected DiskResultStore<R> store = null;
+
+	protected int maxResultsInMemory = Integer.MAX_VALUE;
+
+	/**
+	 * Revisions whose results are still in memory, from the oldest
+	 */
+	protected Deque<R> inMemory = new ArrayDeque<>();
+
 	public FinalResult() {
 		super();
 	}
 
+	/**
+	 * Keeps in memory at most maxResultsInMemory results, the older ones are
+	 * written in the store and read again on demand (e.g., when the final outputs
+	 * are generated).
+	 * 
+	 * @param store
+	 * @param maxResultsInMemory
+	 */
+	public void spillTo(DiskResultStore<R> store, int maxResultsInMemory) {
+		this.store = store;
+		this.maxResultsInMemory = Math.max(maxResultsInMemory, 0);
+	}
+
+	public boolean isSpilling() {
+		return this.store != null;
+	}
+
+	public DiskResultStore<R> getStore() {
+		return store;
+	}
+
+	@Override
+	public RevisionResult put(R revision, RevisionResult result) {
+		RevisionResult previous = super.put(revision, result);
+		if (store == null)
+			return previous;
+
+		inMemory.add(revision);
+		while (inMemory.size() > maxResultsInMemory) {
+			R oldest = inMemory.poll();
+			RevisionResult oldestResult = super.get(oldest);
+			// The key is kept to preserve the order of the revisions
+			if (oldestResult != null && store.write(oldest, oldestResult)) {
+				super.put(oldest, null);
+			}
+		}
+		return previous;
+	}
+
+	@Override
+	public RevisionResult get(Object revision) {
+		RevisionResult result = super.get(revision);
+		if (result == null && store != null && store.contains(revision)) {
+			// Not cached again: the results read from disk are released once used
+			result = store.read(cast(revision));
+		}
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private R cast(Object revision) {
+		return (R) revision;
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		inMemory.clear();
+		if (store != null)
+			store.clear();
+	}
+
+	/**
+	 * The results of all the revisions, in the order they were put. The spilled
+	 * ones are read from the store.
+	 */
 	public Map<R, RevisionResult> getAllResults() {
 		return this;
 	}
 
+	@Override
+	public RevisionResult getOrDefault(Object revision, RevisionResult defaultValue) {
+		RevisionResult result = get(revision);
+		return (result != null || containsKey(revision)) ? result : defaultValue;
+	}
+
+	@Override
+	public boolean containsValue(Object value) {
+		if (store == null)
+			return super.containsValue(value);
+		for (RevisionResult result : values()) {
+			if (result == null ? value == null : result.equals(value))
+				return true;
+		}
+		return false;
+	}
+
+	@Override
+	public void forEach(BiConsumer<? super R, ? super RevisionResult> action) {
+		if (store == null) {
+			super.forEach(action);
+			return;
+		}
+		for (R revision : keySet()) {
+			action.accept(revision, get(revision));
+		}
+	}
+
+	/**
+	 * Once results are spilled, the entries load them from the store. The view
+	 * is then read-only.
+	 */
+	@Override
+	public Set<Map.Entry<R, RevisionResult>> entrySet() {
+		if (store == null)
+			return super.entrySet();
+		return new AbstractSet<Map.Entry<R, RevisionResult>>() {
+
+			@Override
+			public Iterator<Map.Entry<R, RevisionResult>> iterator() {
+				Iterator<R> keys = keySet().iterator();
+				return new Iterator<Map.Entry<R, RevisionResult>>() {
+
+					@Override
+					public boolean hasNext() {
+						return keys.hasNext();
+					}
+
+					@Override
+					public Map.Entry<R, RevisionResult> next() {
+						R key = keys.next();
+						return new AbstractMap.SimpleImmutableEntry<>(key, get(key));
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return FinalResult.this.size();
+			}
+		};
+	}
+
+	/**
+	 * Once results are spilled, the values are loaded from the store. The view
+	 * is then read-only.
+	 */
+	@Override
+	public Collection<RevisionResult> values() {
+		if (store == null)
+			return super.values();
+		return new AbstractCollection<RevisionResult>() {
+
+			@Override
+			public Iterator<RevisionResult> iterator() {
+				Iterator<R> keys = keySet().iterator();
+				return new Iterator<RevisionResult>() {
+
+					@Override
+					public boolean hasNext() {
+						return keys.hasNext();
+					}
+
+					@Override
+					public RevisionResult next() {
+						return get(keys.next());
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return FinalResult.this.size();
+			}
+		};
+	}
+
 	public String toString() {
 		String r = "";
 
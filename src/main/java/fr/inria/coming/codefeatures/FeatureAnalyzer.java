@@ -14,6 +14,7 @@ import fr.inria.coming.changeminer.analyzer.commitAnalyzer.FineGrainDifftAnalyze
 import fr.inria.coming.changeminer.analyzer.commitAnalyzer.HunkDifftAnalyzer;
 import fr.inria.coming.changeminer.entity.IRevision;
 import fr.inria.coming.core.engine.Analyzer;
+import fr.inria.coming.core.engine.ParseProfile;
 import fr.inria.coming.core.entities.AnalysisResult;
 import fr.inria.coming.core.entities.DiffResult;
 import fr.inria.coming.core.entities.HunkDiff;
@@ -100,6 +101,14 @@ public class FeatureAnalyzer implements Analyzer<IRevision> {
 
 	}
 
+	/**
+	 * The comments of the methods are features (METHOD_COMMENTS)
+	 */
+	@Override
+	public ParseProfile getParseProfile() {
+		return ParseProfile.FULL;
+	}
+
 	public void putCodeFromHunk(RevisionResult previousResults, Object nameFile, JsonObject file) {
 		AnalysisResult resultsHunk = previousResults.get(HunkDifftAnalyzer.class.getSimpleName());
 		if (resultsHunk != null) {
@@ -237,4 +246,13 @@ public class FeatureAnalyzer implements Analyzer<IRevision> {
 
 	}
 
+	/**
+	 * Reads the diffs and the hunks
+	 */
+	@Override
+	public Usage getUsage(String analyzerName) {
+		return (FineGrainDifftAnalyzer.class.getSimpleName().equals(analyzerName)
+				|| HunkDifftAnalyzer.class.getSimpleName().equals(analyzerName)) ? Usage.FULL : Usage.NONE;
+	}
+
 }
@@ -1,6 +1,11 @@
 package fr.inria.coming.codefeatures;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
 
 import fr.inria.coming.changeminer.entity.IRevision;
 import fr.inria.coming.core.entities.AnalysisResult;
@@ -10,9 +15,10 @@ import fr.inria.coming.core.entities.AnalysisResult;
  * @author Matias Martinez
  *
  */
+@SuppressWarnings("serial")
 public class FeaturesResult extends AnalysisResult<IRevision> {
 
-	JsonElement features = null;
+	transient JsonElement features = null;
 
 	public FeaturesResult(IRevision analyzed, JsonElement features) {
 		super(analyzed);
@@ -27,4 +33,16 @@ public class FeaturesResult extends AnalysisResult<IRevision> {
 		this.features = features;
 	}
 
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		// JsonElement is not serializable: stored as text
+		out.writeObject(features == null ? null : features.toString());
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		String json = (String) in.readObject();
+		features = (json == null) ? null : new JsonParser().parse(json);
+	}
+
 }
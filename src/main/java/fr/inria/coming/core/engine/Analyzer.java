@@ -3,13 +3,14 @@ package fr.inria.coming.core.engine;
 import fr.inria.coming.changeminer.entity.IRevision;
 import fr.inria.coming.core.entities.AnalysisResult;
 import fr.inria.coming.core.entities.RevisionResult;
+import fr.inria.coming.core.entities.interfaces.ResultConsumer;
 
 /**
  * 
  * @author Matias Martinez
  *
  */
-public interface Analyzer<T extends IRevision> {
+public interface Analyzer<T extends IRevision> extends ResultConsumer {
 
 	/**
 	 * Analyze the input and return the results
@@ -21,4 +22,32 @@ public interface Analyzer<T extends IRevision> {
 	 */
 	public AnalysisResult analyze(T input, RevisionResult previousResults);
 
+	/**
+	 * Information needed by the analyzer in the models of the files (by default,
+	 * the full models), used to select the profile of the experiment
+	 * 
+	 * @return the lightest profile that the analyzer supports
+	 */
+	public default ParseProfile getParseProfile() {
+		return ParseProfile.FULL;
+	}
+
+	/**
+	 * Called before the analysis with the profile selected for all the analyzers
+	 * of the experiment
+	 * 
+	 * @param profile profile to be used when building the models
+	 */
+	public default void setParseProfile(ParseProfile profile) {
+	}
+
+	/**
+	 * Called before the analysis with how the components run after the analyzer
+	 * read its result (see {@link ResultConsumer#getUsage(String)}).
+	 * 
+	 * @param usage
+	 */
+	public default void setResultUsage(Usage usage) {
+	}
+
 }
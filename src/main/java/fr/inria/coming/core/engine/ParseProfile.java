@@ -0,0 +1,52 @@
+package fr.inria.coming.core.engine;
+
+import java.util.List;
+
+import fr.inria.coming.main.ComingProperties;
+
+/**
+ * Processing done when building the models of the files compared:
+ *
+ * <ul>
+ * <li>full: the models of gumtree-spoon, with the comments attached to the
+ * elements (e.g., needed by the feature METHOD_COMMENTS). Changes in the
+ * comments are reported in the diffs.</li>
+ * <li>lean: without the comments, which are not needed to count the changes of
+ * code (e.g., diff mode).</li>
+ * </ul>
+ *
+ * @author Matias Martinez
+ *
+ */
+public enum ParseProfile {
+
+	LEAN(false), FULL(true);
+
+	private boolean commentEnabled;
+
+	private ParseProfile(boolean commentEnabled) {
+		this.commentEnabled = commentEnabled;
+	}
+
+	public boolean isCommentEnabled() {
+		return commentEnabled;
+	}
+
+	/**
+	 * Returns the profile given by the property parse_profile (lean or full) or,
+	 * if it is auto, the lean profile unless one of the analyzers needs the full
+	 * one.
+	 */
+	@SuppressWarnings("rawtypes")
+	public static ParseProfile select(List<Analyzer> analyzers) {
+		String name = ComingProperties.getProperty("parse_profile");
+		if (name != null && !name.trim().isEmpty() && !"auto".equalsIgnoreCase(name.trim()))
+			return ParseProfile.valueOf(name.trim().toUpperCase());
+
+		for (Analyzer analyzer : analyzers) {
+			if (analyzer.getParseProfile() == FULL)
+				return FULL;
+		}
+		return LEAN;
+	}
+}
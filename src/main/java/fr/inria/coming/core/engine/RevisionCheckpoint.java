@@ -0,0 +1,228 @@
+package fr.inria.coming.core.engine;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Journal of a long analysis: it records the position (in the order of
+ * navigation) of the last revision whose results were written by the outputs,
+ * so an interrupted analysis can be resumed from that point.
+ * 
+ * @author Matias Martinez
+ *
+ */
+public class RevisionCheckpoint {
+
+	public static final String FILE_NAME = "coming_checkpoint.properties";
+
+	/**
+	 * Folder (in the output folder) with the copy of the outputs at each flush
+	 */
+	public static final String OUTPUTS_FOLDER = "coming_checkpoint_outputs";
+
+	protected File file = null;
+	/**
+	 * Position of the last revision done, -1 if none
+	 */
+	protected int index = -1;
+	/**
+	 * Name (e.g., commit SHA) of the revision at index
+	 */
+	protected String revision = null;
+	/**
+	 * Number of revisions accepted by the filters and analyzed until index
+	 */
+	protected int nbAnalyzed = 0;
+	/**
+	 * Number of times the outputs were written
+	 */
+	protected int nbFlushes = 0;
+	protected String location = null;
+
+	public RevisionCheckpoint(File file) {
+		this.file = file;
+	}
+
+	public static RevisionCheckpoint fromOutputFolder(String output) {
+		return new RevisionCheckpoint(new File(output, FILE_NAME));
+	}
+
+	public boolean exists() {
+		return file.exists();
+	}
+
+	public void load() throws IOException {
+		Properties p = new Properties();
+		try (InputStream in = new FileInputStream(file)) {
+			p.load(in);
+		}
+		this.index = Integer.parseInt(p.getProperty("index", "-1"));
+		this.revision = p.getProperty("revision");
+		this.nbAnalyzed = Integer.parseInt(p.getProperty("analyzed", "0"));
+		this.nbFlushes = Integer.parseInt(p.getProperty("flushes", "0"));
+		this.location = p.getProperty("location");
+	}
+
+	/**
+	 * Writes the journal in a temporary file which then replaces the previous
+	 * one, so a kill during the write never leaves a corrupted journal.
+	 */
+	public void save() throws IOException {
+		Properties p = new Properties();
+		p.setProperty("index", Integer.toString(index));
+		if (revision != null)
+			p.setProperty("revision", revision);
+		p.setProperty("analyzed", Integer.toString(nbAnalyzed));
+		p.setProperty("flushes", Integer.toString(nbFlushes));
+		if (location != null)
+			p.setProperty("location", location);
+
+		File parent = file.getAbsoluteFile().getParentFile();
+		parent.mkdirs();
+		File tmp = new File(parent, file.getName() + ".tmp");
+		try (OutputStream out = new FileOutputStream(tmp)) {
+			p.store(out, "Coming checkpoint");
+		}
+		try {
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			// e.g., the file system does not support atomic moves
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Copies the files written by the outputs since the given time to the folder
+	 * of the current flush (nbFlushes), with the files of the previous flush not
+	 * written again. It must be called before save(): on resume, restoreOutputs()
+	 * puts back the outputs as they were when the journal was saved, even if the
+	 * process was killed after the outputs were written but before the journal
+	 * was.
+	 * 
+	 * @param since time (in ms) before the outputs were written
+	 */
+	public void saveOutputs(long since) throws IOException {
+		File outputs = getOutputsFolder(nbFlushes);
+		deleteFolder(outputs);
+		outputs.mkdirs();
+		File[] written = file.getAbsoluteFile().getParentFile().listFiles();
+		if (written != null) {
+			// Some file systems record the time of modification in seconds
+			long from = since - 2000;
+			for (File output : written) {
+				if (output.isFile() && output.lastModified() >= from && !output.getName().startsWith(FILE_NAME))
+					Files.copy(output.toPath(), new File(outputs, output.getName()).toPath(),
+							StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		File[] previous = getOutputsFolder(nbFlushes - 1).listFiles();
+		if (previous != null) {
+			for (File output : previous) {
+				File copy = new File(outputs, output.getName());
+				if (!copy.exists())
+					Files.copy(output.toPath(), copy.toPath());
+			}
+		}
+	}
+
+	/**
+	 * Puts back in the output folder the outputs copied at the flush of the
+	 * journal (see saveOutputs)
+	 */
+	public void restoreOutputs() throws IOException {
+		File[] saved = getOutputsFolder(nbFlushes).listFiles();
+		if (saved == null)
+			return;
+		File folder = file.getAbsoluteFile().getParentFile();
+		for (File output : saved) {
+			Files.copy(output.toPath(), new File(folder, output.getName()).toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Deletes the copies of the outputs of the flushes before the one of the
+	 * journal, once it is saved
+	 */
+	public void deleteOldOutputs() {
+		File[] flushes = getOutputsFolder(nbFlushes).getParentFile().listFiles();
+		if (flushes == null)
+			return;
+		for (File flush : flushes) {
+			if (!flush.getName().equals(Integer.toString(nbFlushes)))
+				deleteFolder(flush);
+		}
+	}
+
+	protected File getOutputsFolder(int flush) {
+		return new File(new File(file.getAbsoluteFile().getParentFile(), OUTPUTS_FOLDER), Integer.toString(flush));
+	}
+
+	private void deleteFolder(File folder) {
+		File[] files = folder.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				f.delete();
+			}
+		}
+		folder.delete();
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public void setIndex(int index) {
+		this.index = index;
+	}
+
+	public String getRevision() {
+		return revision;
+	}
+
+	public void setRevision(String revision) {
+		this.revision = revision;
+	}
+
+	public int getNbAnalyzed() {
+		return nbAnalyzed;
+	}
+
+	public void setNbAnalyzed(int nbAnalyzed) {
+		this.nbAnalyzed = nbAnalyzed;
+	}
+
+	public int getNbFlushes() {
+		return nbFlushes;
+	}
+
+	public void setNbFlushes(int nbFlushes) {
+		this.nbFlushes = nbFlushes;
+	}
+
+	public String getLocation() {
+		return location;
+	}
+
+	public void setLocation(String location) {
+		this.location = location;
+	}
+
+	@Override
+	public String toString() {
+		return "checkpoint [index=" + index + ", revision=" + revision + ", analyzed=" + nbAnalyzed + ", location="
+				+ location + "]";
+	}
+}
@@ -1,19 +1,36 @@
 package fr.inria.coming.core.engine;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.apache.log4j.Logger;
+
+import fr.inria.coming.changeminer.entity.DiskResultStore;
 import fr.inria.coming.changeminer.entity.FinalResult;
 import fr.inria.coming.changeminer.entity.IRevision;
 import fr.inria.coming.core.engine.callback.IntermediateResultProcessorCallback;
 import fr.inria.coming.core.entities.AnalysisResult;
+import fr.inria.coming.core.entities.DiffResult;
+import fr.inria.coming.core.entities.EditScriptResult;
 import fr.inria.coming.core.entities.RevisionDataset;
 import fr.inria.coming.core.entities.RevisionResult;
 import fr.inria.coming.core.entities.interfaces.IFilter;
 import fr.inria.coming.core.entities.interfaces.IOutput;
+import fr.inria.coming.core.entities.interfaces.ResultConsumer;
+import fr.inria.coming.core.entities.interfaces.ResultConsumer.Usage;
 import fr.inria.coming.core.entities.interfaces.RevisionOrder;
+import fr.inria.coming.core.filter.FilterPlanner;
 import fr.inria.coming.main.ComingProperties;
+import fr.inria.coming.utils.RunSummary;
 
 /**
  * 
@@ -22,14 +39,43 @@ import fr.inria.coming.main.ComingProperties;
  */
 public abstract class RevisionNavigationExperiment<R extends IRevision> {
 
+	public static final String RELEASED = "results released (no remaining consumer)";
+	public static final String COMPACTED = "diffs replaced by their edit script (only summaries read)";
+
+	protected Logger log = Logger.getLogger(RevisionNavigationExperiment.class.getName());
+
 	protected RevisionOrder<R> navigationStrategy = null;
 	protected List<Analyzer> analyzers = new ArrayList<>();
 	protected List<IFilter> filters = null;
+	@SuppressWarnings("rawtypes")
+	protected FilterPlanner filterPlanner = null;
 	protected List<IOutput> outputProcessors = new ArrayList<>();
 	protected IntermediateResultProcessorCallback intermediateCallback = null;
 
 	protected FinalResult<R> allResults = null;
 
+	/**
+	 * Journal of the analysis, null if checkpoints are disabled
+	 */
+	protected RevisionCheckpoint checkpoint = null;
+	/**
+	 * Revisions analyzed whose results were not written yet by the outputs
+	 */
+	protected List<R> notFlushed = new ArrayList<>();
+	/**
+	 * Position, in the order of navigation, of the last revision done
+	 */
+	protected int position = -1;
+	/**
+	 * Number of revisions analyzed by a previous (resumed) execution
+	 */
+	protected int analyzedBefore = 0;
+	/**
+	 * True if the outputs must be merged with the ones of a previous analysis
+	 * (e.g., incremental mining)
+	 */
+	protected boolean appendOutput = false;
+
 	public RevisionNavigationExperiment() {
 		allResults = new FinalResult<>();
 	}
@@ -64,6 +110,9 @@ public abstract class RevisionNavigationExperiment<R extends IRevision> {
 			this.intermediateCallback.handleResult(resultAllAnalyzed);
 		}
 
+		if (ComingProperties.getPropertyBoolean("compact_edit_scripts")) {
+			compact(resultAllAnalyzed);
+		}
 		if (ComingProperties.getPropertyBoolean("save_result_revision_analysis")) {
 			allResults.put(element, resultAllAnalyzed);
 		}
@@ -75,49 +124,104 @@ public abstract class RevisionNavigationExperiment<R extends IRevision> {
 		}
 	}
 
+	/**
+	 * Once all the analyzers are done with a revision, replaces its diffs by
+	 * their edit scripts, so the Spoon models can be released.
+	 */
+	protected void compact(RevisionResult resultAllAnalyzed) {
+		for (Map.Entry<String, AnalysisResult> result : resultAllAnalyzed.entrySet()) {
+			compact(result);
+		}
+	}
+
+	/**
+	 * Replaces a result with diffs by an {@link EditScriptResult}
+	 * 
+	 * @return the number of diffs replaced
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	protected int compact(Map.Entry<String, AnalysisResult> result) {
+		if (!(result.getValue() instanceof DiffResult))
+			return 0;
+		EditScriptResult scripts = EditScriptResult.fromDiffResult((DiffResult) result.getValue());
+		if (scripts == null)
+			return 0;
+		result.setValue(scripts);
+		return scripts.getEditScripts().size();
+	}
+
 	protected FinalResult processEnd() {
+		if (this.filterPlanner != null) {
+			System.out.println(this.filterPlanner.getSummary());
+		}
+		if (!RunSummary.isEmpty()) {
+			System.out.println(RunSummary.getSummary());
+		}
+
+		if (this.checkpoint != null) {
+			flushCheckpoint();
+			return ComingProperties.getPropertyBoolean("save_result_revision_analysis") ? this.allResults : null;
+		}
+
 		if (ComingProperties.getPropertyBoolean("save_result_revision_analysis")) {
 
-			for (IOutput out : this.getOutputProcessors()) {
-				out.generateFinalOutput(this.allResults);
-			}
+			generateFinalOutput(this.allResults, this.appendOutput);
 
 			return this.allResults;
 		} else
 			return null;
 	}
 
+	/**
+	 * 
+	 * @param results
+	 * @param append  if true, the outputs merge the results with the ones written
+	 *                previously
+	 */
+	protected void generateFinalOutput(FinalResult<R> results, boolean append) {
+		for (IOutput out : this.getOutputProcessors()) {
+			out.generateFinalOutput(results, append);
+		}
+	}
+
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	public FinalResult analyze() {
 
+		RunSummary.reset();
+		configureParseProfile();
+		configureResultUsage();
 		RevisionDataset data = loadDataset();
 		Iterator it = this.getNavigationStrategy().orderOfNavigation(data);
 
-		int i = 1;
+		int size = data.size();
+
+		initResultStore();
+		initCheckpoint(it);
+		// the statistics of the filters are measured for each analysis
+		this.filterPlanner = null;
 
-		List<Analyzer> analyzers = this.getAnalyzers();
+		int nbThreads = ComingProperties.getPropertyInteger("nb_threads");
+		if (nbThreads > 1) {
+			analyzeInParallel(it, size, nbThreads);
+			return processEnd();
+		}
 
-		int size = data.size();
+		int i = analyzedBefore + 1;
 
 		for (Iterator<R> iterator = it; iterator.hasNext();) {
 
 			R oneRevision = iterator.next();
 
-			System.out.println("\n***********\nAnalyzing " + i + "/" + size);
+			System.out.println("\n***********\nAnalyzing " + i + ((size >= 0) ? "/" + size : ""));
 			if (!accept(oneRevision)) {
+				revisionDone(oneRevision, false);
 				continue;
 			}
 
-			RevisionResult resultAllAnalyzed = new RevisionResult(oneRevision);
-			for (Analyzer analyzer : analyzers) {
-
-				AnalysisResult resultAnalyzer = analyzer.analyze(oneRevision, resultAllAnalyzed);
-				resultAllAnalyzed.put(analyzer.getClass().getSimpleName(), resultAnalyzer);
-				if (resultAnalyzer == null || !resultAnalyzer.sucessful())
-					break;
-			}
+			RevisionResult resultAllAnalyzed = analyzeRevision(oneRevision);
 
 			processEndRevision(oneRevision, resultAllAnalyzed);
+			revisionDone(oneRevision, true);
 
 			i++;
 			if (i > ComingProperties.getPropertyInteger("maxrevision"))
@@ -127,17 +231,331 @@ public abstract class RevisionNavigationExperiment<R extends IRevision> {
 		return processEnd();
 	}
 
+	/**
+	 * Selects the lightest profile of parsing that all the analyzers support.
+	 */
+	protected void configureParseProfile() {
+		ParseProfile profile = ParseProfile.select(this.getAnalyzers());
+		log.info("Parse profile: " + profile);
+		for (Analyzer analyzer : this.getAnalyzers()) {
+			analyzer.setParseProfile(profile);
+		}
+	}
+
+	/**
+	 * Tells each analyzer how its result is read, so it can produce only what is
+	 * read (e.g., edit scripts instead of diffs)
+	 */
+	protected void configureResultUsage() {
+		for (int i = 0; i < this.getAnalyzers().size(); i++) {
+			Analyzer analyzer = this.getAnalyzers().get(i);
+			analyzer.setResultUsage(getUsageAfter(i, analyzer.getClass().getSimpleName()));
+		}
+	}
+
+	/**
+	 * When the results are saved and spill_result_revision_analysis is true, the
+	 * results of the revisions are written on disk, keeping in memory only the
+	 * last max_results_in_memory ones.
+	 */
+	protected void initResultStore() {
+		if (allResults == null || allResults.isSpilling()
+				|| !ComingProperties.getPropertyBoolean("save_result_revision_analysis")
+				|| !ComingProperties.getPropertyBoolean("spill_result_revision_analysis"))
+			return;
+
+		try {
+			DiskResultStore<R> store = new DiskResultStore<>();
+			allResults.spillTo(store, ComingProperties.getPropertyInteger("max_results_in_memory"));
+			log.info("Results of revisions spilled to " + store.getDirectory());
+		} catch (IOException e) {
+			log.error("Results kept in memory, the store cannot be created: " + e);
+		}
+	}
+
+	/**
+	 * Checkpoints are enabled by the property checkpoint or by resume. When resume
+	 * is true and a journal exists in the output folder, the revisions done by the
+	 * previous execution are skipped.
+	 * 
+	 * @param iterator revisions in the order of navigation
+	 */
+	protected void initCheckpoint(Iterator<R> iterator) {
+		this.checkpoint = null;
+		this.notFlushed.clear();
+		this.position = -1;
+		this.analyzedBefore = 0;
+
+		boolean resume = ComingProperties.getPropertyBoolean("resume");
+		if (!resume && !ComingProperties.getPropertyBoolean("checkpoint"))
+			return;
+
+		RevisionCheckpoint journal = RevisionCheckpoint.fromOutputFolder(ComingProperties.getProperty("output"));
+		String location = ComingProperties.getProperty("location");
+		this.checkpoint = journal;
+
+		if (!resume || !journal.exists()) {
+			if (resume)
+				log.info("No checkpoint found at " + journal.getFile() + ", starting from the first revision");
+			journal.setLocation(location);
+			return;
+		}
+
+		try {
+			journal.load();
+		} catch (IOException e) {
+			throw new IllegalStateException("Error reading the checkpoint " + journal.getFile(), e);
+		}
+		if (journal.getLocation() != null && !journal.getLocation().equals(location))
+			throw new IllegalStateException("The checkpoint " + journal.getFile() + " corresponds to "
+					+ journal.getLocation() + " and not to " + location);
+
+		R last = null;
+		while (position < journal.getIndex() && iterator.hasNext()) {
+			last = iterator.next();
+			position++;
+		}
+		if (journal.getIndex() >= 0 && (position < journal.getIndex() || !last.getName().equals(journal.getRevision())))
+			throw new IllegalStateException("The revisions to analyze do not correspond to the " + journal
+					+ " found at position " + position + ": " + last);
+
+		try {
+			// The outputs written after the journal would count again the revisions
+			// analyzed after it
+			journal.restoreOutputs();
+		} catch (IOException e) {
+			throw new IllegalStateException("Error restoring the outputs of the checkpoint " + journal.getFile(), e);
+		}
+		this.analyzedBefore = journal.getNbAnalyzed();
+		log.info("Resuming the analysis after the " + journal);
+	}
+
+	/**
+	 * Called for each revision in the order of navigation, once it has been
+	 * filtered out or analyzed.
+	 * 
+	 * @param revision
+	 * @param analyzed false if the revision was not accepted by the filters
+	 */
+	protected void revisionDone(R revision, boolean analyzed) {
+		releaseRevision(revision);
+		position++;
+		if (this.checkpoint == null)
+			return;
+
+		checkpoint.setIndex(position);
+		checkpoint.setRevision(revision.getName());
+		if (analyzed) {
+			checkpoint.setNbAnalyzed(checkpoint.getNbAnalyzed() + 1);
+			notFlushed.add(revision);
+			if (notFlushed.size() >= ComingProperties.getPropertyInteger("checkpoint_interval"))
+				flushCheckpoint();
+		}
+	}
+
+	/**
+	 * Releases the data loaded for a revision (e.g., the content of the files)
+	 * once it has been filtered out or analyzed. By default, nothing is done.
+	 * 
+	 * @param revision
+	 */
+	protected void releaseRevision(R revision) {
+	}
+
+	/**
+	 * Writes the results not written yet (merging them with the outputs from the
+	 * previous checkpoints), a copy of the outputs, and then the journal.
+	 */
+	protected void flushCheckpoint() {
+		long start = System.currentTimeMillis();
+		if (ComingProperties.getPropertyBoolean("save_result_revision_analysis")) {
+			FinalResult<R> results = new FinalResult<>();
+			for (R revision : notFlushed) {
+				results.put(revision, allResults.get(revision));
+			}
+			generateFinalOutput(results, this.appendOutput || checkpoint.getNbFlushes() > 0);
+		}
+		notFlushed.clear();
+		checkpoint.setNbFlushes(checkpoint.getNbFlushes() + 1);
+		try {
+			checkpoint.saveOutputs(start);
+			checkpoint.save();
+			checkpoint.deleteOldOutputs();
+		} catch (IOException e) {
+			log.error("Error writing the checkpoint " + checkpoint.getFile() + ": " + e);
+		}
+	}
+
+	public RevisionCheckpoint getCheckpoint() {
+		return checkpoint;
+	}
+
+	/**
+	 * Runs the chain of analyzers over one revision. The chain stops at the first
+	 * analyzer that does not produce a successful result.
+	 * 
+	 * @param oneRevision
+	 * @return the results of all analyzers executed
+	 */
+	@SuppressWarnings("unchecked")
+	protected RevisionResult analyzeRevision(R oneRevision) {
+		RevisionResult resultAllAnalyzed = new RevisionResult(oneRevision);
+		boolean release = ComingProperties.getPropertyBoolean("release_unused_results");
+		for (int i = 0; i < this.getAnalyzers().size(); i++) {
+			Analyzer analyzer = this.getAnalyzers().get(i);
+
+			AnalysisResult resultAnalyzer = analyzer.analyze(oneRevision, resultAllAnalyzed);
+			resultAllAnalyzed.put(analyzer.getClass().getSimpleName(), resultAnalyzer);
+			if (resultAnalyzer == null || !resultAnalyzer.sucessful())
+				break;
+			if (release)
+				releaseResults(resultAllAnalyzed, i);
+		}
+		return resultAllAnalyzed;
+	}
+
+	/**
+	 * Drops the results that the components run after the given analyzer do not
+	 * read, and replaces by edit scripts the diffs that they only read as
+	 * summaries.
+	 * 
+	 * @param analyzerIndex index of the last analyzer executed
+	 */
+	protected void releaseResults(RevisionResult resultAllAnalyzed, int analyzerIndex) {
+		for (Iterator<Map.Entry<String, AnalysisResult>> it = resultAllAnalyzed.entrySet().iterator(); it
+				.hasNext();) {
+			Map.Entry<String, AnalysisResult> result = it.next();
+			Usage usage = getUsageAfter(analyzerIndex, result.getKey());
+			if (usage == Usage.NONE) {
+				it.remove();
+				RunSummary.increment(RELEASED);
+			} else if (usage == Usage.SUMMARY) {
+				RunSummary.add(COMPACTED, compact(result));
+			}
+		}
+	}
+
+	/**
+	 * How the result of an analyzer is read by the components run after the
+	 * given analyzer: the next analyzers, the callback and the outputs (if they
+	 * receive the results).
+	 */
+	protected Usage getUsageAfter(int analyzerIndex, String analyzerName) {
+		List<ResultConsumer> consumers = new ArrayList<>();
+		consumers.addAll(this.getAnalyzers().subList(analyzerIndex + 1, this.getAnalyzers().size()));
+		if (this.intermediateCallback != null)
+			consumers.add(this.intermediateCallback);
+		if (ComingProperties.getPropertyBoolean("save_result_revision_analysis")
+				|| ComingProperties.getPropertyBoolean("outputperrevision"))
+			consumers.addAll(this.getOutputProcessors());
+
+		Usage usage = Usage.NONE;
+		for (ResultConsumer consumer : consumers) {
+			Usage consumerUsage = consumer.getUsage(analyzerName);
+			if (consumerUsage.compareTo(usage) > 0)
+				usage = consumerUsage;
+		}
+		return usage;
+	}
+
+	/**
+	 * Filters and analyzes several revisions at the same time using a pool of
+	 * nbThreads workers. The results are delivered (callback, outputs, final
+	 * result) in the same order than the navigation strategy.
+	 * 
+	 * @param iterator  revisions in the order of navigation
+	 * @param size      number of revisions
+	 * @param nbThreads number of workers
+	 */
+	@SuppressWarnings("unchecked")
+	protected void analyzeInParallel(Iterator<R> iterator, int size, int nbThreads) {
+
+		ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+		// Revisions submitted but not delivered yet, in order of navigation. A
+		// null result means that the revision was not accepted by the filters.
+		Deque<Future<RevisionResult>> inFlight = new ArrayDeque<>();
+		Deque<R> submitted = new ArrayDeque<>();
+		int maxInFlight = 2 * nbThreads;
+
+		int i = analyzedBefore + 1;
+		try {
+			while (true) {
+				while (inFlight.size() < maxInFlight && iterator.hasNext()) {
+					R oneRevision = iterator.next();
+					submitted.add(oneRevision);
+					inFlight.add(executor.submit(() -> accept(oneRevision) ? analyzeRevision(oneRevision) : null));
+				}
+				if (inFlight.isEmpty())
+					break;
+
+				R oneRevision = submitted.poll();
+				RevisionResult resultAllAnalyzed = waitResult(inFlight.poll());
+				if (resultAllAnalyzed == null) {
+					revisionDone(oneRevision, false);
+					continue;
+				}
+
+				System.out.println("\n***********\nAnalyzing " + i + ((size >= 0) ? "/" + size : ""));
+				processEndRevision(oneRevision, resultAllAnalyzed);
+				revisionDone(oneRevision, true);
+
+				i++;
+				if (i > ComingProperties.getPropertyInteger("maxrevision"))
+					break;
+			}
+		} finally {
+			// Revisions beyond maxrevision are discarded
+			for (Future<RevisionResult> pending : inFlight) {
+				pending.cancel(true);
+			}
+			executor.shutdownNow();
+			for (R discarded : submitted) {
+				releaseRevision(discarded);
+			}
+		}
+	}
+
+	private RevisionResult waitResult(Future<RevisionResult> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			// Same behaviour than the sequential analysis: the error stops the
+			// navigation
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
 	protected boolean accept(R element) {
-		if (this.getFilters() == null)
+		if (this.getFilters() == null || this.getFilters().isEmpty())
 			return true;
 
-		boolean accepted = true;
-		for (IFilter iFilter : this.getFilters()) {
+		return getFilterPlanner().accept(element);
+	};
 
-			accepted &= iFilter.accept(element);
+	/**
+	 * The filters are evaluated until the first one that rejects the revision.
+	 * By default (filter_order=adaptive), the order of evaluation is learned
+	 * during the analysis, otherwise (filter_order=given) the filters are
+	 * evaluated in the order given by the user.
+	 * 
+	 * @return the planner of the current list of filters
+	 */
+	@SuppressWarnings("rawtypes")
+	protected synchronized FilterPlanner getFilterPlanner() {
+		if (filterPlanner == null || filterPlanner.getFilters() != this.getFilters()) {
+			filterPlanner = new FilterPlanner<>(this.getFilters(),
+					!"given".equals(ComingProperties.getProperty("filter_order")));
 		}
-		return accepted;
-	};
+		return filterPlanner;
+	}
 
 	public List<IFilter> getFilters() {
 		return filters;
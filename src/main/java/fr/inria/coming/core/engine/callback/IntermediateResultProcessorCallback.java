@@ -1,13 +1,14 @@
 package fr.inria.coming.core.engine.callback;
 
 import fr.inria.coming.core.entities.RevisionResult;
+import fr.inria.coming.core.entities.interfaces.ResultConsumer;
 
 /**
  * 
  * @author Matias Martinez
  *
  */
-public interface IntermediateResultProcessorCallback {
+public interface IntermediateResultProcessorCallback extends ResultConsumer {
 
 	public void handleResult(RevisionResult result);
 
@@ -4,7 +4,9 @@ import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.diff.DiffEntry.ChangeType;
@@ -12,12 +14,15 @@ import org.eclipse.jgit.diff.DiffFormatter;
 import org.eclipse.jgit.diff.RawTextComparator;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathSuffixFilter;
 import org.eclipse.jgit.treewalk.filter.TreeFilter;
 import org.eclipse.jgit.util.io.DisabledOutputStream;
 import org.gitective.core.BlobUtils;
@@ -32,50 +37,100 @@ public class CommitGit implements Commit {
 	private RepositoryP repo;
 	private RevCommit revCommit;
 
+	/**
+	 * Files changed by the commit, computed once and shared by the filters and
+	 * analyzers until the revision is released.
+	 */
+	private List<FileCommit> fileCommits = null;
+	private List<FileCommit> javaFileCommits = null;
+
+	/**
+	 * Paths of the files to consider, applied during the tree walk so the other
+	 * files are never read.
+	 */
+	private TreeFilter pathFilter = TreeFilter.ALL;
+
 	public CommitGit(RepositoryP repository, RevCommit revCmt) {
+		this(repository, revCmt, TreeFilter.ALL);
+	}
+
+	public CommitGit(RepositoryP repository, RevCommit revCmt, TreeFilter pathFilter) {
 		this.repo = repository;
 		this.revCommit = revCmt;
+		this.pathFilter = pathFilter;
 	}
 
 	@Override
 	public List<FileCommit> getFileCommits() {
+		return new ArrayList<>(loadFileCommits());
+	}
+
+	private synchronized List<FileCommit> loadFileCommits() {
+		if (fileCommits == null) {
+			fileCommits = computeFileCommits(this.pathFilter);
+		}
+		return fileCommits;
+	}
+
+	/**
+	 * Releases the files changed by this commit (and their content). They are
+	 * computed again if they are requested later.
+	 */
+	public synchronized void release() {
+		fileCommits = null;
+		javaFileCommits = null;
+	}
+
+	/**
+	 * 
+	 * @param filter paths of the files to retrieve
+	 * @return the files changed by the commit
+	 */
+	protected List<FileCommit> computeFileCommits(TreeFilter filter) {
 		List<FileCommit> resultFileCommits = new ArrayList<FileCommit>();
 
 		RevWalk rw = new RevWalk(this.repo.getRepository());
 		try {
+			// Parsed again: when the history is filtered by path, the parents of the
+			// commit are rewritten
+			RevCommit commit = rw.parseCommit(this.revCommit.getId());
+
 			TreeWalk tw = new TreeWalk(this.repo.getRepository());
 			tw.reset();
 			tw.setRecursive(true);
-			tw.addTree(revCommit.getTree());
+			tw.addTree(commit.getTree());
 
-			if (revCommit.getParentCount() == 0) {
+			if (commit.getParentCount() == 0) {
+				tw.setFilter(filter);
 				while (tw.next()) {
 					// To retrieve file name
-					String fileNextVersion = getFileContent(this.revCommit.getId(), tw.getPathString());
+					String fileNextVersion = getFileContent(tw.getObjectId(0));
 					FileCommit file = new FileCommitGit("", "", tw.getPathString(), fileNextVersion, this);
 					resultFileCommits.add(file);
 				}
 				tw.release();
 				return resultFileCommits;
 			} else {
-				for (RevCommit rc : revCommit.getParents()) {
-					tw.addTree(rc.getTree());
+				for (RevCommit rc : commit.getParents()) {
+					tw.addTree(rw.parseCommit(rc.getId()).getTree());
 				}
-				tw.setFilter(new MyTreeFilter());
+				tw.setFilter(AndTreeFilter.create(new MyTreeFilter(), filter));
 
-				List<String> tmp = new ArrayList<String>();
+				Set<String> tmp = new HashSet<String>();
 				while (tw.next()) {
 					tmp.add(tw.getPathString());
 				}
+				tw.release();
 
 				DiffFormatter df = new DiffFormatter(DisabledOutputStream.INSTANCE);
 				df.setRepository(this.repo.getRepository());
 				df.setDiffComparator(RawTextComparator.DEFAULT);
 				df.setDetectRenames(true);
+				df.setPathFilter(filter);
 
-				for (int i = 0; i < revCommit.getParentCount(); i++) {
-					RevCommit parent = rw.parseCommit(this.revCommit.getParent(i).getId());
-					List<DiffEntry> diffs = df.scan(parent.getTree(), this.revCommit.getTree());
+				for (int i = 0; i < commit.getParentCount(); i++) {
+					RevCommit parent = rw.parseCommit(commit.getParent(i).getId());
+					List<DiffEntry> diffs = df.scan(parent.getTree(), commit.getTree());
 					// --
 					/*
 					 * RenameDetector rd = new RenameDetector(this.repo.getRepository());
@@ -90,18 +145,19 @@ public class CommitGit implements Commit {
 						if (!diff.getChangeType().equals(ChangeType.DELETE)) {
 							if (tmp.contains(diff.getNewPath())) {
 
-								String previousCommitName = this.revCommit.getParent(0).getName();
-								String filePrevVersion = getFileContent(this.revCommit.getParent(0).getId(),
-										diff.getOldPath());
-								String fileNextVersion = getFileContent(this.revCommit.getId(), diff.getNewPath());
+								String previousCommitName = commit.getParent(0).getName();
+								// The previous version is always the one from the first parent
+								String filePrevVersion = (i == 0) ? getFileContent(diff.getOldId())
+										: getFileContent(commit.getParent(0).getId(), diff.getOldPath());
+								String fileNextVersion = getFileContent(diff.getNewId());
 								FileCommit file = new FileCommitGit(diff.getOldPath(), filePrevVersion,
 										diff.getNewPath(), fileNextVersion, this, previousCommitName);
 								resultFileCommits.add(file);
 							}
 						} else {
-							String previousCommitName = this.revCommit.getParent(0).getName();
-							String filePrevVersion = getFileContent(this.revCommit.getParent(0).getId(),
-									diff.getOldPath());
+							String previousCommitName = commit.getParent(0).getName();
+							String filePrevVersion = (i == 0) ? getFileContent(diff.getOldId())
+									: getFileContent(commit.getParent(0).getId(), diff.getOldPath());
 							FileCommit file = new FileCommitGit(diff.getOldPath(), filePrevVersion, "", "", this,
 									previousCommitName);
 							resultFileCommits.add(file);
@@ -109,6 +165,7 @@ public class CommitGit implements Commit {
 						}
 					}
 				}
+				df.release();
 			}
 		} catch (Throwable t) {
 			t.printStackTrace();
@@ -121,15 +178,25 @@ public class CommitGit implements Commit {
 
 	@Override
 	public List<FileCommit> getJavaFileCommits() {
-		List<FileCommit> files = getFileCommits();
-		List<FileCommit> javaFiles = new ArrayList<FileCommit>();
+		return new ArrayList<>(loadJavaFileCommits());
+	}
 
-		for (FileCommit fileCommit : files) {
-			if (fileCommit.getFileName().endsWith(".java"))
-				javaFiles.add(fileCommit);
+	private synchronized List<FileCommit> loadJavaFileCommits() {
+		if (javaFileCommits == null) {
+			// If the changed files are not known yet, the content of the non java files
+			// is not read
+			List<FileCommit> files = (fileCommits != null) ? fileCommits
+					: computeFileCommits(AndTreeFilter.create(this.pathFilter, PathSuffixFilter.create(".java")));
+			List<FileCommit> javaFiles = new ArrayList<FileCommit>();
+
+			for (FileCommit fileCommit : files) {
+				// e.g., the removed files have no name
+				if (fileCommit.getFileName().endsWith(".java"))
+					javaFiles.add(fileCommit);
+			}
+			javaFileCommits = javaFiles;
 		}
-
-		return javaFiles;
+		return javaFileCommits;
 	}
 
 	@Override
@@ -139,8 +206,7 @@ public class CommitGit implements Commit {
 
 	@Override
 	public boolean containsJavaFile() {
-		List<FileCommit> javaFiles = getJavaFileCommits();
-		return !javaFiles.isEmpty();
+		return !loadJavaFileCommits().isEmpty();
 	}
 
 	@Override
@@ -176,12 +242,34 @@ public class CommitGit implements Commit {
 
 		// If the file is new or has been deleted
 		if (fileId != null) {
-			file = BlobUtils.getContent(jgitRepo, fileId);
+			file = getFileContent(fileId);
 		}
 
 		return file;
 	}
 
+	private String getFileContent(AbbreviatedObjectId blobId) {
+		// The ids given by a diff of trees are complete
+		if (blobId == null || !blobId.isComplete())
+			return "";
+		return getFileContent(blobId.toObjectId());
+	}
+
+	/**
+	 * 
+	 * @param blobId
+	 * @return the content of the blob, empty if the blob id is zero (e.g., the
+	 *         file is new or has been deleted)
+	 */
+	private String getFileContent(ObjectId blobId) {
+		if (this.repo instanceof RepositoryPGit) {
+			return ((RepositoryPGit) this.repo).getBlobLoader().getContent(blobId);
+		}
+		if (ObjectId.zeroId().equals(blobId))
+			return "";
+		return BlobUtils.getContent(this.repo.getRepository(), blobId);
+	}
+
 	public RepositoryP getRepository() {
 		return repo;
 	}
@@ -206,7 +294,8 @@ class MyTreeFilter extends TreeFilter {
 
 	@Override
 	public TreeFilter clone() {
-		throw new UnsupportedOperationException();
+		// No state
+		return this;
 	}
 
 	@Override
@@ -230,7 +319,8 @@ class MyTreeFilter extends TreeFilter {
 
 	@Override
 	public boolean shouldBeRecursive() {
-		throw new UnsupportedOperationException();
+		// Used in recursive walks, it does not depend on the path
+		return false;
 	}
 
 }
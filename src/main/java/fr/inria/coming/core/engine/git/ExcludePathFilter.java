@@ -0,0 +1,61 @@
+package fr.inria.coming.core.engine.git;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * Excludes the given paths (files or folders, relative to the root of the
+ * repository) and everything under them.
+ * 
+ * Note that a NotTreeFilter over a PathFilterGroup cannot be used: it would
+ * also exclude the parent folders of the excluded paths.
+ *
+ */
+public class ExcludePathFilter extends TreeFilter {
+
+	private List<String> excluded = new ArrayList<>();
+
+	private boolean recursive = false;
+
+	public ExcludePathFilter(Collection<String> paths) {
+		for (String path : paths) {
+			String normalized = path.trim();
+			while (normalized.endsWith("/"))
+				normalized = normalized.substring(0, normalized.length() - 1);
+			if (normalized.isEmpty())
+				continue;
+			excluded.add(normalized);
+			// A nested folder can only be excluded in a recursive walk
+			recursive |= normalized.contains("/");
+		}
+	}
+
+	@Override
+	public boolean include(TreeWalk walker) {
+		String path = walker.getPathString();
+		for (String prefix : excluded) {
+			if (path.equals(prefix) || (path.startsWith(prefix) && path.charAt(prefix.length()) == '/'))
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean shouldBeRecursive() {
+		return recursive;
+	}
+
+	@Override
+	public TreeFilter clone() {
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return "EXCLUDE(" + excluded + ")";
+	}
+}
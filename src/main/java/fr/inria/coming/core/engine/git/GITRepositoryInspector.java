@@ -1,5 +1,10 @@
 package fr.inria.coming.core.engine.git;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
 import org.apache.log4j.Logger;
 
 import fr.inria.coming.changeminer.entity.CommitFinalResult;
@@ -7,7 +12,6 @@ import fr.inria.coming.changeminer.entity.FinalResult;
 import fr.inria.coming.core.engine.RevisionNavigationExperiment;
 import fr.inria.coming.core.entities.RevisionDataset;
 import fr.inria.coming.core.entities.interfaces.Commit;
-import fr.inria.coming.core.entities.interfaces.RepositoryP;
 import fr.inria.coming.core.extensionpoints.navigation.InOrderRevisionNavigation;
 import fr.inria.coming.main.ComingProperties;
 
@@ -25,6 +29,13 @@ public class GITRepositoryInspector extends RevisionNavigationExperiment<Commit>
 
 	RevisionDataset<Commit> history = null;
 
+	/**
+	 * Last commit mined per repository, null if the mining is not incremental
+	 */
+	protected IncrementalMiningState incrementalState = null;
+
+	protected Commit lastCommitDone = null;
+
 	public GITRepositoryInspector() {
 		// By default, in order.
 		super(new InOrderRevisionNavigation<Commit>());
@@ -34,18 +45,94 @@ public class GITRepositoryInspector extends RevisionNavigationExperiment<Commit>
 	@Override
 	protected FinalResult processEnd() {
 		super.processEnd();
+		saveIncrementalState();
+		if (history instanceof GitRevisionDataset) {
+			((GitRevisionDataset) history).getRepository().release();
+		}
 		return this.allResults;
 	}
 
+	@Override
+	protected void revisionDone(Commit revision, boolean analyzed) {
+		super.revisionDone(revision, analyzed);
+		this.lastCommitDone = revision;
+	}
+
+	/**
+	 * Stores the last commit navigated, so the next incremental mining starts
+	 * after it.
+	 */
+	protected void saveIncrementalState() {
+		if (this.incrementalState == null || this.lastCommitDone == null)
+			return;
+		this.incrementalState.setLastCommit(ComingProperties.getProperty("location"),
+				ComingProperties.getProperty("branch"), this.lastCommitDone.getName());
+		try {
+			this.incrementalState.save();
+		} catch (IOException e) {
+			log.error("Error saving the state of the incremental mining " + this.incrementalState.getFile() + ": "
+					+ e);
+		}
+	}
+
+	/**
+	 * 
+	 * @param property
+	 * @return the paths given in the property, separated by the path separator
+	 */
+	protected List<String> getPaths(String property) {
+		String paths = ComingProperties.getProperty(property);
+		if (paths == null || paths.trim().isEmpty())
+			return null;
+		return Arrays.asList(paths.split(File.pathSeparator));
+	}
+
+	@Override
+	protected void releaseRevision(Commit revision) {
+		if (revision instanceof CommitGit) {
+			((CommitGit) revision).release();
+		}
+	}
+
 	@Override
 	public RevisionDataset<Commit> loadDataset() {
 
 		String repositoryPath = ComingProperties.getProperty("location");
 		String branch = ComingProperties.getProperty("branch");
 
-		RepositoryP repo = new RepositoryPGit(repositoryPath, branch);
+		RepositoryPGit repo = new RepositoryPGit(repositoryPath, branch, getPaths("includepath"),
+				getPaths("excludepath"));
+
+		// The commits are parsed while navigating
+		boolean oldestFirst = !"newest_first".equals(ComingProperties.getProperty("history_order"));
+
+		String since = ComingProperties.getProperty("since");
+		String until = ComingProperties.getProperty("until");
+
+		this.incrementalState = null;
+		this.lastCommitDone = null;
+		this.appendOutput = false;
+		if (ComingProperties.getPropertyBoolean("incremental")) {
+			try {
+				this.incrementalState = IncrementalMiningState
+						.fromOutputFolder(ComingProperties.getProperty("output"));
+			} catch (IOException e) {
+				throw new IllegalStateException("Error reading the state of the incremental mining", e);
+			}
+			String lastCommit = this.incrementalState.getLastCommit(repositoryPath, branch);
+			if (lastCommit != null) {
+				log.info("Mining the commits after " + lastCommit);
+				since = lastCommit;
+				this.appendOutput = true;
+			}
+			if (!oldestFirst) {
+				log.info("Incremental mining navigates the commits from the oldest one");
+				oldestFirst = true;
+			}
+		}
+		repo.setRange(since, until);
 
-		history = new RevisionDataset<>(repo.history());
+		history = new GitRevisionDataset(repo, oldestFirst);
 
 		return history;
 	}
@@ -0,0 +1,138 @@
+package fr.inria.coming.core.engine.git;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+
+import fr.inria.coming.utils.RunSummary;
+
+/**
+ * Loads the content of the files of a repository. Each thread reuses its own
+ * reader, and the decoded contents are kept in a LRU cache bounded by size:
+ * the version of a file after a commit is usually the version before the next
+ * commit that changes it.
+ * 
+ * @author Matias Martinez
+ *
+ */
+public class GitBlobLoader {
+
+	protected Logger log = Logger.getLogger(GitBlobLoader.class.getName());
+
+	public static final String HITS = "git blob cache hits";
+	public static final String MISSES = "git blob cache misses";
+
+	protected Repository repository = null;
+
+	protected ThreadLocal<ObjectReader> readers = new ThreadLocal<>();
+
+	protected List<ObjectReader> allReaders = new ArrayList<>();
+
+	/**
+	 * Maximum number of chars in the cache
+	 */
+	protected long maxSize = 0;
+
+	protected long size = 0;
+
+	protected LinkedHashMap<ObjectId, String> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * 
+	 * @param repository
+	 * @param maxSizeMb size of the cache in megabytes, 0 to disable it
+	 */
+	public GitBlobLoader(Repository repository, int maxSizeMb) {
+		this.repository = repository;
+		// A char uses two bytes
+		this.maxSize = (long) maxSizeMb * 1024 * 1024 / 2;
+	}
+
+	/**
+	 * 
+	 * @param blobId
+	 * @return the content of the blob, empty if the id is null or zero (e.g., the
+	 *         file does not exist in a version)
+	 */
+	public String getContent(ObjectId blobId) {
+		if (blobId == null || ObjectId.zeroId().equals(blobId))
+			return "";
+
+		String content = getFromCache(blobId);
+		if (content != null) {
+			RunSummary.increment(HITS);
+			return content;
+		}
+		RunSummary.increment(MISSES);
+
+		try {
+			ObjectLoader loader = getReader().open(blobId, Constants.OBJ_BLOB);
+			content = new String(loader.getCachedBytes(Integer.MAX_VALUE), Constants.CHARSET);
+		} catch (IOException e) {
+			log.error("Error reading the blob " + blobId.getName() + ": " + e);
+			return "";
+		}
+		putInCache(blobId, content);
+		return content;
+	}
+
+	/**
+	 * 
+	 * @return the reader of the current thread
+	 */
+	public ObjectReader getReader() {
+		ObjectReader reader = readers.get();
+		if (reader == null) {
+			reader = repository.newObjectReader();
+			readers.set(reader);
+			synchronized (allReaders) {
+				allReaders.add(reader);
+			}
+		}
+		return reader;
+	}
+
+	private synchronized String getFromCache(ObjectId blobId) {
+		return cache.get(blobId);
+	}
+
+	private synchronized void putInCache(ObjectId blobId, String content) {
+		if (content.length() > maxSize || cache.containsKey(blobId))
+			return;
+		cache.put(blobId.copy(), content);
+		size += content.length();
+		// Least recently used first
+		for (Iterator<Map.Entry<ObjectId, String>> it = cache.entrySet().iterator(); size > maxSize
+				&& it.hasNext();) {
+			size -= it.next().getValue().length();
+			it.remove();
+		}
+	}
+
+	/**
+	 * Releases the readers of all threads and empties the cache.
+	 */
+	public void release() {
+		synchronized (allReaders) {
+			for (ObjectReader reader : allReaders) {
+				reader.release();
+			}
+			allReaders.clear();
+		}
+		readers = new ThreadLocal<>();
+		synchronized (this) {
+			cache.clear();
+			size = 0;
+		}
+	}
+}
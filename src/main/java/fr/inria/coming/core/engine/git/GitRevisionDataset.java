@@ -0,0 +1,57 @@
+package fr.inria.coming.core.engine.git;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+import fr.inria.coming.core.entities.RevisionDataset;
+import fr.inria.coming.core.entities.interfaces.Commit;
+
+/**
+ * Commits of a git repository, parsed while they are navigated.
+ * 
+ * @author Matias Martinez
+ *
+ */
+public class GitRevisionDataset extends RevisionDataset<Commit> {
+
+	protected RepositoryPGit repository = null;
+
+	protected boolean oldestFirst = true;
+
+	public GitRevisionDataset(RepositoryPGit repository, boolean oldestFirst) {
+		super();
+		this.repository = repository;
+		this.oldestFirst = oldestFirst;
+	}
+
+	@Override
+	public Iterator<Commit> getIterator() {
+		return this.repository.iterator(oldestFirst);
+	}
+
+	/**
+	 * Loads all commits in memory: navigation strategies should prefer
+	 * getIterator().
+	 */
+	@Override
+	public Collection<Commit> getAllData() {
+		return this.repository.history();
+	}
+
+	/**
+	 * @return the number of commits, -1 if it is not known before the navigation
+	 *         (from the newest commit)
+	 */
+	@Override
+	public int size() {
+		return oldestFirst ? this.repository.getCommitIds().size() : -1;
+	}
+
+	public RepositoryPGit getRepository() {
+		return repository;
+	}
+
+	public boolean isOldestFirst() {
+		return oldestFirst;
+	}
+}
@@ -0,0 +1,86 @@
+package fr.inria.coming.core.engine.git;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Last commit navigated for each repository (and branch), used to mine only
+ * the new commits of a repository.
+ * 
+ * @author Matias Martinez
+ *
+ */
+public class IncrementalMiningState {
+
+	public static final String FILE_NAME = "coming_incremental.properties";
+
+	protected File file = null;
+
+	protected Properties lastCommits = new Properties();
+
+	public IncrementalMiningState(File file) {
+		this.file = file;
+	}
+
+	public static IncrementalMiningState fromOutputFolder(String output) throws IOException {
+		IncrementalMiningState state = new IncrementalMiningState(new File(output, FILE_NAME));
+		state.load();
+		return state;
+	}
+
+	public void load() throws IOException {
+		lastCommits.clear();
+		if (!file.exists())
+			return;
+		try (InputStream in = new FileInputStream(file)) {
+			lastCommits.load(in);
+		}
+	}
+
+	/**
+	 * Writes the state in a temporary file which then replaces the previous one.
+	 */
+	public void save() throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		parent.mkdirs();
+		File tmp = new File(parent, file.getName() + ".tmp");
+		try (OutputStream out = new FileOutputStream(tmp)) {
+			lastCommits.store(out, "Coming: last commit mined per repository");
+		}
+		try {
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	public static String key(String location, String branch) {
+		String path = location;
+		try {
+			path = new File(location).getCanonicalPath();
+		} catch (IOException e) {
+			path = new File(location).getAbsolutePath();
+		}
+		return path + "@" + branch;
+	}
+
+	public String getLastCommit(String location, String branch) {
+		return lastCommits.getProperty(key(location, branch));
+	}
+
+	public void setLastCommit(String location, String branch, String commit) {
+		lastCommits.setProperty(key(location, branch), commit);
+	}
+
+	public File getFile() {
+		return file;
+	}
+}
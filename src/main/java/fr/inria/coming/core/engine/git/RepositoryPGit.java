@@ -2,27 +2,27 @@ package fr.inria.coming.core.engine.git;
 
 import java.io.File;
 import java.io.IOException;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 
-import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.ListBranchCommand.ListMode;
-import org.eclipse.jgit.api.errors.GitAPIException;
+import org.apache.log4j.Logger;
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.diff.RenameDetector;
-import org.eclipse.jgit.errors.AmbiguousObjectException;
 import org.eclipse.jgit.errors.CorruptObjectException;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
-import org.eclipse.jgit.errors.RevisionSyntaxException;
 import org.eclipse.jgit.lib.ObjectId;
-import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
-import org.eclipse.jgit.revwalk.RevSort;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.CommitTimeRevFilter;
 import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
 import org.eclipse.jgit.treewalk.FileTreeIterator;
 import org.eclipse.jgit.treewalk.TreeWalk;
@@ -32,19 +32,42 @@ import org.eclipse.jgit.treewalk.filter.TreeFilter;
 
 import fr.inria.coming.core.entities.interfaces.Commit;
 import fr.inria.coming.core.entities.interfaces.RepositoryP;
+import fr.inria.coming.main.ComingProperties;
 
 public class RepositoryPGit implements RepositoryP {
 
+	protected Logger log = Logger.getLogger(RepositoryPGit.class.getName());
+
 	private Repository repository;
 
-	private List<Commit> commits;
+	private List<Commit> commits = null;
+	private List<ObjectId> commitIds = null;
 	private String masterBranch;
+	/**
+	 * Range of the commits to navigate
+	 */
+	private ObjectId sinceCommit = null;
+	private Date sinceDate = null;
+	private ObjectId untilCommit = null;
+	private Date untilDate = null;
 	private Collection<String> filter;
+	/**
+	 * Paths of the files to consider in the commits
+	 */
+	private TreeFilter pathFilter = TreeFilter.ALL;
+	/**
+	 * Content of the files, shared by all commits
+	 */
+	private GitBlobLoader blobLoader = null;
 
 	public RepositoryPGit(String pathOfRepo, String branch) {
 		this(pathOfRepo, branch, null);
 	}
 
+	public RepositoryPGit(String pathOfRepo, String branch, Collection<String> filter) {
+		this(pathOfRepo, branch, filter, null);
+	}
+
 	/**
 	 * Init a Git repository navigation
 	 * 
@@ -54,10 +77,16 @@ public class RepositoryPGit implements RepositoryP {
 	 *            The comparator used to set the grain of fragments
 	 * @param branch
 	 *            The branch to analyze
+	 * @param filter
+	 *            Paths to include (all if null or empty)
+	 * @param excludedPaths
+	 *            Paths to exclude (none if null or empty)
 	 */
-	public RepositoryPGit(String pathOfRepo, String branch, Collection<String> filter) {
+	public RepositoryPGit(String pathOfRepo, String branch, Collection<String> filter,
+			Collection<String> excludedPaths) {
 		FileRepositoryBuilder builder = new FileRepositoryBuilder();
 		this.filter = filter;
+		this.pathFilter = createPathFilter(filter, excludedPaths);
 		String path = pathOfRepo;
 		if (!path.endsWith("/"))
 			path = path + "/";
@@ -69,74 +98,211 @@ public class RepositoryPGit implements RepositoryP {
 			e.printStackTrace();
 		}
 
-		commits = new ArrayList<Commit>();
 		masterBranch = branch;
+		blobLoader = new GitBlobLoader(repository, ComingProperties.getPropertyInteger("blob_cache_size_mb"));
+	}
+
+	/**
+	 * Load all commits of the repository
+	 */
+	private void loadCommits() {
+		List<Commit> allCommits = new ArrayList<Commit>();
+		for (Iterator<Commit> iterator = iterator(true); iterator.hasNext();) {
+			allCommits.add(iterator.next());
+		}
+		this.commits = allCommits;
+	}
+
+	/**
+	 * The commits are parsed when they are consumed, so the navigation can start
+	 * before walking the whole history.
+	 * 
+	 * @param oldestFirst if true, from the first commit to the head of the
+	 *                    branch. Only the ids of the commits are kept to reverse
+	 *                    the order of the walk. Otherwise, from the head, without
+	 *                    any buffering.
+	 * @return the commits of the branch that change the considered paths
+	 */
+	public Iterator<Commit> iterator(boolean oldestFirst) {
+		if (oldestFirst) {
+			Iterator<ObjectId> ids = getCommitIds().iterator();
+			return new Iterator<Commit>() {
+
+				@Override
+				public boolean hasNext() {
+					return ids.hasNext();
+				}
+
+				@Override
+				public Commit next() {
+					return createCommit(ids.next());
+				}
+			};
+		}
+
+		RevWalk revWalk = null;
 		try {
-			loadCommits();
-		} catch (RevisionSyntaxException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (AmbiguousObjectException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (IncorrectObjectTypeException e) {
-			// TODO Auto-generated catch block
+			revWalk = createRevWalk();
+		} catch (IOException e) {
 			e.printStackTrace();
+			return Collections.emptyIterator();
+		}
+		RevWalk walk = revWalk;
+		Iterator<RevCommit> walkIterator = walk.iterator();
+		return new Iterator<Commit>() {
+
+			@Override
+			public boolean hasNext() {
+				boolean hasNext = walkIterator.hasNext();
+				if (!hasNext)
+					walk.release();
+				return hasNext;
+			}
+
+			@Override
+			public Commit next() {
+				return createCommit(walkIterator.next());
+			}
+		};
+	}
+
+	/**
+	 * 
+	 * @return the ids of the commits, from the first one to the head of the
+	 *         branch
+	 */
+	public synchronized List<ObjectId> getCommitIds() {
+		if (this.commitIds == null) {
+			List<ObjectId> ids = new ArrayList<>();
+			try {
+				RevWalk revWalk = createRevWalk();
+				for (RevCommit c : revWalk) {
+					ids.add(c.copy());
+				}
+				revWalk.release();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			// Same order than RevSort.REVERSE
+			Collections.reverse(ids);
+			this.commitIds = ids;
+		}
+		return this.commitIds;
+	}
+
+	/**
+	 * Limits the commits to navigate. Each bound is a commit (id or reference) or
+	 * a date (yyyy-MM-dd or yyyy-MM-dd'T'HH:mm:ss).
+	 * 
+	 * @param since only the commits after this commit (excluded) or date, all if
+	 *              null
+	 * @param until only the commits until this commit (included) or date, until
+	 *              the head of the branch if null
+	 */
+	public synchronized void setRange(String since, String until) {
+		this.sinceCommit = null;
+		this.sinceDate = null;
+		this.untilCommit = null;
+		this.untilDate = null;
+		if (since != null) {
+			this.sinceDate = parseDate(since);
+			if (this.sinceDate == null)
+				this.sinceCommit = resolveCommit(since);
+		}
+		if (until != null) {
+			this.untilDate = parseDate(until);
+			if (this.untilDate == null)
+				this.untilCommit = resolveCommit(until);
+		}
+		this.commits = null;
+		this.commitIds = null;
+	}
+
+	private Date parseDate(String date) {
+		for (String format : new String[] { "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd" }) {
+			SimpleDateFormat dateFormat = new SimpleDateFormat(format);
+			dateFormat.setLenient(false);
+			ParsePosition position = new ParsePosition(0);
+			Date parsed = dateFormat.parse(date, position);
+			if (parsed != null && position.getIndex() == date.length())
+				return parsed;
+		}
+		return null;
+	}
+
+	private ObjectId resolveCommit(String revision) {
+		ObjectId id = null;
+		try {
+			id = repository.resolve(revision);
+		} catch (IOException | RuntimeException e) {
+			log.error("Error resolving " + revision + ": " + e);
+		}
+		if (id == null)
+			throw new IllegalArgumentException("Unknown commit or date: " + revision);
+		return id;
+	}
+
+	/**
+	 * 
+	 * @return the id of the most recent commit to navigate
+	 */
+	public ObjectId getHead() {
+		try {
+			return (this.untilCommit != null) ? this.untilCommit : repository.resolve(masterBranch);
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
 			e.printStackTrace();
+			return null;
 		}
 	}
 
 	/**
-	 * Load all commits of the repository
 	 * 
-	 * @throws RevisionSyntaxException
-	 * @throws AmbiguousObjectException
-	 * @throws IncorrectObjectTypeException
+	 * @return a walk over the branch that keeps only the header of the commits
 	 * @throws IOException
 	 */
-	private void loadCommits()
-			throws RevisionSyntaxException, AmbiguousObjectException, IncorrectObjectTypeException, IOException {
+	protected RevWalk createRevWalk() throws IOException {
 		RevWalk revWalk = new RevWalk(repository);
-		ObjectId from = repository.resolve(masterBranch);
+		// The message of the commits is parsed again in createCommit
+		revWalk.setRetainBody(false);
+		ObjectId from = (this.untilCommit != null) ? this.untilCommit : repository.resolve(masterBranch);
 		revWalk.markStart(revWalk.parseCommit(from));
-		if (this.filter == null || this.filter.isEmpty())
+		if (this.sinceCommit != null) {
+			// The commit and its ancestors were already navigated
+			revWalk.markUninteresting(revWalk.parseCommit(this.sinceCommit));
+		}
+		if (this.sinceDate != null && this.untilDate != null)
+			revWalk.setRevFilter(CommitTimeRevFilter.between(this.sinceDate, this.untilDate));
+		else if (this.sinceDate != null)
+			revWalk.setRevFilter(CommitTimeRevFilter.after(this.sinceDate));
+		else if (this.untilDate != null)
+			revWalk.setRevFilter(CommitTimeRevFilter.before(this.untilDate));
+
+		if (this.pathFilter == TreeFilter.ALL)
 			revWalk.setTreeFilter(TreeFilter.ALL);
 		else {
-			TreeFilter filter = AndTreeFilter.create(PathFilterGroup.createFromStrings(this.filter),
-					TreeFilter.ANY_DIFF);
+			// Only the commits that change the considered paths
+			TreeFilter filter = AndTreeFilter.create(this.pathFilter, TreeFilter.ANY_DIFF);
 			revWalk.setTreeFilter(filter);
 		}
-		revWalk.sort(RevSort.REVERSE, true);
+		return revWalk;
+	}
 
-		for (RevCommit c : revWalk) {
-			// detectRenames(c.getTree());
-			Commit commit = new CommitGit(this, c);
-			commits.add(commit);
-		}
-		Git git = new Git(repository);
-		List<Ref> call;
+	/**
+	 * Parses the commit with its own walk, so it is not retained by the walk
+	 * over the history.
+	 * 
+	 * @param id
+	 * @return
+	 */
+	protected Commit createCommit(ObjectId id) {
+		RevWalk revWalk = new RevWalk(repository);
 		try {
-			call = git.branchList().setListMode(ListMode.ALL).call();
-			// call = git.init().setDirectory(new File("")).call();
-
-			for (Ref ref : call) {
-				// System.out.println("Branch: " + ref + " " + ref.getName() +
-				// " " + ref.getObjectId().getName());
-			}
-
-			List<Ref> call2 = new Git(repository).tagList().call();
-			for (Ref ref : call2) {
-
-				// System.out.println("Tag: " + ref + " " + ref.getName() + " "
-				// + ref.getObjectId().getName());
-			}
-		} catch (GitAPIException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			return new CommitGit(this, revWalk.parseCommit(id), this.pathFilter);
+		} catch (IOException e) {
+			throw new RuntimeException("Error parsing the commit " + id.getName(), e);
+		} finally {
+			revWalk.release();
 		}
-
 	}
 
 	protected void detectRenames(RevTree revTree)
@@ -156,8 +322,45 @@ public class RepositoryPGit implements RepositoryP {
 		}
 	}
 
+	/**
+	 * 
+	 * @param includedPaths
+	 * @param excludedPaths
+	 * @return the tree filter accepting the included paths (or all) minus the
+	 *         excluded ones
+	 */
+	public static TreeFilter createPathFilter(Collection<String> includedPaths, Collection<String> excludedPaths) {
+		TreeFilter pathFilter = TreeFilter.ALL;
+		if (includedPaths != null && !includedPaths.isEmpty()) {
+			pathFilter = PathFilterGroup.createFromStrings(includedPaths);
+		}
+		if (excludedPaths != null && !excludedPaths.isEmpty()) {
+			TreeFilter exclude = new ExcludePathFilter(excludedPaths);
+			pathFilter = (pathFilter == TreeFilter.ALL) ? exclude : AndTreeFilter.create(pathFilter, exclude);
+		}
+		return pathFilter;
+	}
+
+	public TreeFilter getPathFilter() {
+		return pathFilter;
+	}
+
+	public GitBlobLoader getBlobLoader() {
+		return blobLoader;
+	}
+
+	/**
+	 * Releases the readers and the cache of contents
+	 */
+	public void release() {
+		blobLoader.release();
+	}
+
 	@Override
-	public List<Commit> history() {
+	public synchronized List<Commit> history() {
+		if (this.commits == null) {
+			loadCommits();
+		}
 		return this.commits;
 	}
 
@@ -1,12 +1,17 @@
 package fr.inria.coming.core.entities;
 
+import java.io.Serializable;
+
 /**
- * Store the results from the analysis of one revision
+ * Store the results from the analysis of one revision. Results are
+ * serializable so they can be spilled to disk (see DiskResultStore); the
+ * subclasses holding non serializable data are kept in memory.
  * 
  * @author Matias Martinez
  *
  */
-public class AnalysisResult<T> {
+@SuppressWarnings("serial")
+public class AnalysisResult<T> implements Serializable {
 
 	protected T analyzed;
 
@@ -0,0 +1,109 @@
+package fr.inria.coming.core.entities;
+
+import java.io.Serializable;
+
+import com.github.gumtreediff.actions.model.Update;
+
+import gumtree.spoon.diff.operations.Operation;
+import spoon.reflect.cu.SourcePosition;
+import spoon.reflect.declaration.CtElement;
+
+/**
+ * Operation of an {@link EditScript}: what the consumers of the diffs use
+ * (kind of action, types and labels of the nodes, position), without
+ * references to the Spoon models.
+ *
+ * @author Matias Martinez
+ *
+ */
+@SuppressWarnings("serial")
+public class EditOperation implements Serializable {
+
+	/**
+	 * Name of the action (e.g., INS, DEL, UPD, MOV)
+	 */
+	protected String action;
+	/**
+	 * Simple name of the class of the node (e.g., CtInvocationImpl)
+	 */
+	protected String nodeType;
+	protected String parentType;
+	protected String label;
+	/**
+	 * New label of the node, for the updates (null otherwise)
+	 */
+	protected String newLabel;
+	protected int line = -1;
+	protected int endLine = -1;
+	protected int sourceStart = -1;
+	protected int sourceEnd = -1;
+
+	public EditOperation(String action, String nodeType, String parentType, String label, String newLabel, int line,
+			int endLine, int sourceStart, int sourceEnd) {
+		this.action = action;
+		this.nodeType = nodeType;
+		this.parentType = parentType;
+		this.label = label;
+		this.newLabel = newLabel;
+		this.line = line;
+		this.endLine = endLine;
+		this.sourceStart = sourceStart;
+		this.sourceEnd = sourceEnd;
+	}
+
+	public static EditOperation fromOperation(Operation<?> operation) {
+		CtElement node = operation.getNode();
+		CtElement parent = (node.isParentInitialized()) ? node.getParent() : null;
+		String newLabel = (operation.getAction() instanceof Update) ? ((Update) operation.getAction()).getValue()
+				: null;
+		String label = operation.getAction().getNode().getLabel();
+		SourcePosition position = node.getPosition();
+		boolean valid = position != null && position.isValidPosition();
+		return new EditOperation(operation.getAction().getName(), node.getClass().getSimpleName(),
+				(parent != null) ? parent.getClass().getSimpleName() : "", (label != null) ? label : "",
+				newLabel, valid ? position.getLine() : -1, valid ? position.getEndLine() : -1,
+				valid ? position.getSourceStart() : -1, valid ? position.getSourceEnd() : -1);
+	}
+
+	public String getAction() {
+		return action;
+	}
+
+	public String getNodeType() {
+		return nodeType;
+	}
+
+	public String getParentType() {
+		return parentType;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+
+	public String getNewLabel() {
+		return newLabel;
+	}
+
+	public int getLine() {
+		return line;
+	}
+
+	public int getEndLine() {
+		return endLine;
+	}
+
+	public int getSourceStart() {
+		return sourceStart;
+	}
+
+	public int getSourceEnd() {
+		return sourceEnd;
+	}
+
+	@Override
+	public String toString() {
+		return "\"" + action + " " + nodeType + " at line " + line + ": " + label
+				+ ((newLabel != null) ? " to " + newLabel : "") + "\"";
+	}
+}
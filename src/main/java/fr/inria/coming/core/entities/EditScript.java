@@ -0,0 +1,187 @@
+package fr.inria.coming.core.entities;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import gumtree.spoon.diff.Diff;
+import gumtree.spoon.diff.operations.Operation;
+
+/**
+ * Compact representation of a diff: its root operations (see
+ * {@link EditOperation}) and its number of operations, without the Spoon
+ * models nor the mappings of the diff. It takes a few hundred bytes per
+ * operation, so the results of many revisions can be kept (or spilled on disk)
+ * once their analysis is done.
+ *
+ * It is serialized in a binary format where the types and labels are written
+ * once.
+ *
+ * @author Matias Martinez
+ *
+ */
+public class EditScript implements Externalizable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int FORMAT_VERSION = 1;
+
+	protected List<EditOperation> rootOperations = new ArrayList<>();
+
+	protected int nbOperations = 0;
+
+	/**
+	 * Only for the deserialization
+	 */
+	public EditScript() {
+	}
+
+	public EditScript(List<EditOperation> rootOperations, int nbOperations) {
+		this.rootOperations = rootOperations;
+		this.nbOperations = nbOperations;
+	}
+
+	public static EditScript fromDiff(Diff diff) {
+		List<EditOperation> operations = new ArrayList<>();
+		for (Operation<?> operation : diff.getRootOperations()) {
+			operations.add(EditOperation.fromOperation(operation));
+		}
+		return new EditScript(operations, diff.getAllOperations().size());
+	}
+
+	public List<EditOperation> getRootOperations() {
+		return rootOperations;
+	}
+
+	/**
+	 * Number of operations of the diff (root operations and the ones they
+	 * contain)
+	 */
+	public int getNbOperations() {
+		return nbOperations;
+	}
+
+	public byte[] toBytes() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			write(out);
+		} catch (IOException e) {
+			// Not thrown by a stream in memory
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	public static EditScript fromBytes(byte[] bytes) throws IOException {
+		EditScript script = new EditScript();
+		script.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+		return script;
+	}
+
+	public void write(DataOutput out) throws IOException {
+		Map<String, Integer> strings = new LinkedHashMap<>();
+		for (EditOperation operation : rootOperations) {
+			for (String string : new String[] { operation.action, operation.nodeType, operation.parentType,
+					operation.label, operation.newLabel }) {
+				if (string != null && !strings.containsKey(string))
+					strings.put(string, strings.size());
+			}
+		}
+		writeVarInt(out, FORMAT_VERSION);
+		writeVarInt(out, nbOperations);
+		writeVarInt(out, strings.size());
+		for (String string : strings.keySet()) {
+			byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			writeVarInt(out, bytes.length);
+			out.write(bytes);
+		}
+		writeVarInt(out, rootOperations.size());
+		for (EditOperation operation : rootOperations) {
+			writeVarInt(out, strings.get(operation.action));
+			writeVarInt(out, strings.get(operation.nodeType));
+			writeVarInt(out, strings.get(operation.parentType));
+			writeVarInt(out, strings.get(operation.label));
+			// 0 for no new label
+			writeVarInt(out, (operation.newLabel == null) ? 0 : strings.get(operation.newLabel) + 1);
+			// The positions are -1 when unknown
+			writeVarInt(out, operation.line + 1);
+			writeVarInt(out, operation.endLine + 1);
+			writeVarInt(out, operation.sourceStart + 1);
+			writeVarInt(out, operation.sourceEnd + 1);
+		}
+	}
+
+	public void read(DataInput in) throws IOException {
+		int version = readVarInt(in);
+		if (version != FORMAT_VERSION)
+			throw new IOException("Unknown format of edit script: " + version);
+		nbOperations = readVarInt(in);
+		String[] strings = new String[readVarInt(in)];
+		for (int i = 0; i < strings.length; i++) {
+			byte[] bytes = new byte[readVarInt(in)];
+			in.readFully(bytes);
+			strings[i] = new String(bytes, StandardCharsets.UTF_8);
+		}
+		int nbRootOperations = readVarInt(in);
+		rootOperations = new ArrayList<>(nbRootOperations);
+		for (int i = 0; i < nbRootOperations; i++) {
+			String action = strings[readVarInt(in)];
+			String nodeType = strings[readVarInt(in)];
+			String parentType = strings[readVarInt(in)];
+			String label = strings[readVarInt(in)];
+			int newLabel = readVarInt(in);
+			rootOperations.add(new EditOperation(action, nodeType, parentType, label,
+					(newLabel == 0) ? null : strings[newLabel - 1], readVarInt(in) - 1, readVarInt(in) - 1,
+					readVarInt(in) - 1, readVarInt(in) - 1));
+		}
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		write(out);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException {
+		read(in);
+	}
+
+	/**
+	 * Writes a positive int in 1 to 5 bytes, 7 bits per byte
+	 */
+	private static void writeVarInt(DataOutput out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readVarInt(DataInput in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte b = in.readByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Malformed edit script");
+	}
+
+	@Override
+	public String toString() {
+		return "EditScript (" + nbOperations + " operations): " + rootOperations;
+	}
+}
@@ -0,0 +1,66 @@
+package fr.inria.coming.core.entities;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import gumtree.spoon.diff.Diff;
+
+/**
+ * Result of an analyzer of diffs (e.g., FineGrainDifftAnalyzer) whose diffs
+ * were replaced by their edit scripts (see {@link EditScript}), so the Spoon
+ * models can be released. It is not a {@link DiffResult}: the consumers that
+ * need the diffs do not get edit scripts in their place.
+ * 
+ * @author Matias Martinez
+ *
+ */
+@SuppressWarnings("serial")
+public class EditScriptResult<T> extends AnalysisResult<T> {
+
+	/**
+	 * Filename
+	 */
+	protected Map<String, EditScript> editScripts = null;
+
+	public EditScriptResult(T analyzed, Map<String, EditScript> editScripts) {
+		super(analyzed);
+		this.editScripts = editScripts;
+	}
+
+	/**
+	 * Returns the edit scripts of the diffs of a result, in the same order, null
+	 * if the result does not contain diffs (e.g., hunks).
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public static EditScriptResult fromDiffResult(DiffResult result) {
+		Map<String, Object> diffs = result.getDiffOfFiles();
+		if (diffs == null)
+			return null;
+		Map<String, EditScript> scripts = new LinkedHashMap<>();
+		for (Map.Entry<String, Object> entry : diffs.entrySet()) {
+			if (!(entry.getValue() instanceof Diff))
+				return null;
+			scripts.put(entry.getKey(), EditScript.fromDiff((Diff) entry.getValue()));
+		}
+		return new EditScriptResult(result.getAnalyzed(), scripts);
+	}
+
+	public Map<String, EditScript> getEditScripts() {
+		return editScripts;
+	}
+
+	public List<EditScript> getAll() {
+		return new ArrayList<>(editScripts.values());
+	}
+
+	public String toString() {
+		String r = "";
+		for (String file : this.editScripts.keySet()) {
+			r += "\n" + ("-" + file);
+			r += "\n" + this.editScripts.get(file);
+		}
+		return r;
+	}
+}
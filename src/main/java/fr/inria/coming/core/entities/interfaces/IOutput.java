@@ -8,7 +8,7 @@ import fr.inria.coming.core.entities.RevisionResult;
  * @author Matias Martinez
  *
  */
-public interface IOutput {
+public interface IOutput extends ResultConsumer {
 	/**
 	 * Compute output for the final results
 	 * 
@@ -16,6 +16,18 @@ public interface IOutput {
 	 */
 	public void generateFinalOutput(FinalResult finalResult);
 
+	/**
+	 * Compute output for the final results, merging them with the outputs written
+	 * previously (e.g., by the previous checkpoints) if append is true. By
+	 * default, the previous outputs are replaced.
+	 * 
+	 * @param finalResult
+	 * @param append
+	 */
+	public default void generateFinalOutput(FinalResult finalResult, boolean append) {
+		generateFinalOutput(finalResult);
+	}
+
 	/**
 	 * Compute the outputs for the results of a revision
 	 * 
@@ -0,0 +1,41 @@
+package fr.inria.coming.core.entities.interfaces;
+
+/**
+ * Component (analyzer, output, callback) that reads the results of the
+ * analyzers of a revision. When the property release_unused_results is true,
+ * the engine uses these declarations to drop the results that no remaining
+ * consumer reads, or to replace the diffs by their edit scripts, as soon as
+ * the last consumer needing them has run.
+ * 
+ * @author Matias Martinez
+ *
+ */
+public interface ResultConsumer {
+
+	public enum Usage {
+		/**
+		 * The result is not read
+		 */
+		NONE,
+		/**
+		 * The diffs of the result can be replaced by their edit scripts (other
+		 * results are kept as they are)
+		 */
+		SUMMARY,
+		/**
+		 * The result is read as produced
+		 */
+		FULL
+	}
+
+	/**
+	 * How the result of an analyzer is read. By default, all the results are
+	 * fully read.
+	 * 
+	 * @param analyzerName simple name of the class of the analyzer (key of the
+	 *                     result in RevisionResult)
+	 */
+	public default Usage getUsage(String analyzerName) {
+		return Usage.FULL;
+	}
+}
@@ -78,4 +78,9 @@ public class FeaturesOutput implements IOutput {
 		save(result);
 	}
 
+	@Override
+	public Usage getUsage(String analyzerName) {
+		return FeatureAnalyzer.class.getSimpleName().equals(analyzerName) ? Usage.FULL : Usage.NONE;
+	}
+
 }
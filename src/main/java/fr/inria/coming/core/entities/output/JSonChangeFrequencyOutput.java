@@ -1,7 +1,9 @@
 package fr.inria.coming.core.entities.output;
 
 import java.io.File;
+import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.Reader;
 import java.util.Map;
 
 import com.google.gson.Gson;
@@ -11,11 +13,15 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
+import fr.inria.coming.changeminer.analyzer.MatcherStrategy;
 import fr.inria.coming.changeminer.analyzer.commitAnalyzer.FineGrainDifftAnalyzer;
 import fr.inria.coming.changeminer.entity.FinalResult;
 import fr.inria.coming.changeminer.entity.IRevision;
 import fr.inria.coming.core.entities.AnalysisResult;
 import fr.inria.coming.core.entities.DiffResult;
+import fr.inria.coming.core.entities.EditOperation;
+import fr.inria.coming.core.entities.EditScript;
+import fr.inria.coming.core.entities.EditScriptResult;
 import fr.inria.coming.core.entities.RevisionResult;
 import fr.inria.coming.core.entities.interfaces.IOutput;
 import fr.inria.coming.main.ComingProperties;
@@ -24,31 +30,55 @@ import gumtree.spoon.diff.Diff;
 import gumtree.spoon.diff.operations.Operation;
 
 public class JSonChangeFrequencyOutput implements IOutput {
+
+	public static final String FILE_NAME = "change_frequency.json";
+
 	MapCounter<String> counter = new MapCounter<>();
 	MapCounter<String> counterParent = new MapCounter<>();
 
-	@SuppressWarnings("rawtypes")
 	@Override
 	public void generateFinalOutput(FinalResult finalResult) {
+		generateFinalOutput(finalResult, false);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void generateFinalOutput(FinalResult finalResult, boolean append) {
 
 		if (finalResult == null)
 			return;
 
+		counter.clear();
+		counterParent.clear();
+		if (append) {
+			// Frequencies written by the previous checkpoints
+			readFrequencies(new File(ComingProperties.getProperty("output") + File.separator + FILE_NAME));
+		}
+
 		Map<IRevision, RevisionResult> results = finalResult.getAllResults();
 
 		for (RevisionResult revresult : results.values()) {
 
 			AnalysisResult ar = revresult.getResultFromClass(FineGrainDifftAnalyzer.class);
-			if (ar != null) {
+			if (ar instanceof EditScriptResult) {
+				// Diffs compacted after the analysis of their revision
+				for (EditScript script : ((EditScriptResult<?>) ar).getEditScripts().values()) {
+					for (EditOperation operation : script.getRootOperations()) {
+						counter.add(clean(operation.getNodeType()));
+						counterParent.add(clean(
+								operation.getAction() + "_" + operation.getNodeType() + "_" + operation.getParentType()));
+					}
+				}
+			} else if (ar != null) {
 				DiffResult dr = (DiffResult) ar;
 				for (Object value : dr.getDiffOfFiles().values()) {
 
 					Diff singleDiff = (Diff) value;
 					for (Operation operation : singleDiff.getRootOperations()) {
-						counter.add(operation.getNode().getClass().getSimpleName());
-						counterParent.add(
+						counter.add(clean(operation.getNode().getClass().getSimpleName()));
+						counterParent.add(clean(
 								operation.getAction().getName() + "_" + operation.getNode().getClass().getSimpleName()
-										+ "_" + operation.getNode().getParent().getClass().getSimpleName());
+										+ "_" + operation.getNode().getParent().getClass().getSimpleName()));
 
 					}
 				}
@@ -56,20 +86,11 @@ public class JSonChangeFrequencyOutput implements IOutput {
 
 		}
 
-		JsonObject root = new JsonObject();
-
-		addStats(root, "frequency", counter.sorted());
-		addStats(root, "frequencyParent", counterParent.sorted());
-
-		Map prob = counter.getProbabilies();
-		Map probParent = counterParent.getProbabilies();
-
-		addStats(root, "probability", prob);
-		addStats(root, "probabilityParent", probParent);
+		JsonObject root = getJSon();
 
 		FileWriter fw;
 		try {
-			String fileName = ComingProperties.getProperty("output") + File.separator + "change_frequency.json";
+			String fileName = ComingProperties.getProperty("output") + File.separator + FILE_NAME;
 			fw = new FileWriter(fileName);
 			Gson gson = new GsonBuilder().setPrettyPrinting().create();
 			JsonParser jp = new JsonParser();
@@ -86,6 +107,27 @@ public class JSonChangeFrequencyOutput implements IOutput {
 		}
 	}
 
+	/**
+	 * Frequencies and probabilities of the changes counted until now.
+	 */
+	@SuppressWarnings("rawtypes")
+	public JsonObject getJSon() {
+		JsonObject root = new JsonObject();
+
+		addStats(root, "frequency", counter.sorted());
+		addStats(root, "frequencyParent", counterParent.sorted());
+
+		Map prob = counter.getProbabilies();
+		Map probParent = counterParent.getProbabilies();
+
+		addStats(root, "probability", prob);
+		addStats(root, "probabilityParent", probParent);
+		// Only with another matching, so the default outputs do not change
+		if (!MatcherStrategy.isDefault())
+			root.add("matcher", MatcherStrategy.getCurrentJson());
+		return root;
+	}
+
 	@SuppressWarnings({ "unused", "unchecked" })
 	private void addStats(JsonObject root, String key1, Map sorted) {
 		JsonArray frequencyArray = new JsonArray();
@@ -94,14 +136,52 @@ public class JSonChangeFrequencyOutput implements IOutput {
 			Object v = sorted.get(key);
 			JsonObject singlediff = new JsonObject();
 
-			singlediff.addProperty("c", key.toString().replace("Ct", "").replace("Impl", ""));
+			singlediff.addProperty("c", clean(key.toString()));
 			singlediff.addProperty("f", v.toString());
 			frequencyArray.add(singlediff);
 		}
 	}
 
+	private static String clean(String key) {
+		return key.replace("Ct", "").replace("Impl", "");
+	}
+
+	/**
+	 * Adds to the counters the frequencies of a file written by this output
+	 * (e.g., by a previous execution or by another repository).
+	 */
+	public void readFrequencies(File fin) {
+		if (!fin.exists())
+			return;
+		try (Reader reader = new FileReader(fin)) {
+			JsonObject previous = new JsonParser().parse(reader).getAsJsonObject();
+			addFrequencies(previous.getAsJsonArray("frequency"), counter);
+			addFrequencies(previous.getAsJsonArray("frequencyParent"), counterParent);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void addFrequencies(JsonArray frequencies, MapCounter<String> counter) {
+		if (frequencies == null)
+			return;
+		for (JsonElement element : frequencies) {
+			JsonObject frequency = element.getAsJsonObject();
+			counter.add(frequency.get("c").getAsString(), Integer.parseInt(frequency.get("f").getAsString()));
+		}
+	}
+
 	@Override
 	public void generateRevisionOutput(RevisionResult resultAllAnalyzed) {
 
 	}
+
+	/**
+	 * Only the types of the root operations of the diffs are counted
+	 */
+	@Override
+	public Usage getUsage(String analyzerName) {
+		return FineGrainDifftAnalyzer.class.getSimpleName().equals(analyzerName) ? Usage.SUMMARY : Usage.NONE;
+	}
+
 }
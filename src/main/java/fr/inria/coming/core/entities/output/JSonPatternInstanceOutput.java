@@ -1,7 +1,9 @@
 package fr.inria.coming.core.entities.output;
 
 import java.io.File;
+import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.Reader;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -10,6 +12,7 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
+import fr.inria.coming.changeminer.analyzer.MatcherStrategy;
 import fr.inria.coming.changeminer.analyzer.instancedetector.ChangePatternInstance;
 import fr.inria.coming.changeminer.analyzer.instancedetector.PatternInstanceAnalyzer;
 import fr.inria.coming.changeminer.analyzer.instancedetector.PatternInstancesFromDiff;
@@ -26,11 +29,25 @@ public class JSonPatternInstanceOutput implements IOutput {
 
 	@Override
 	public void generateFinalOutput(FinalResult finalResult) {
+		generateFinalOutput(finalResult, false);
+	}
+
+	@Override
+	public void generateFinalOutput(FinalResult finalResult, boolean append) {
 
 		System.out.println("JSON output Final Results");
 		JsonObject root = new JsonObject();
 		JsonArray instances = new JsonArray();
 		root.add("instances", instances);
+		// Only with another matching, so the default outputs do not change
+		if (!MatcherStrategy.isDefault())
+			root.add("matcher", MatcherStrategy.getCurrentJson());
+		if (append) {
+			// Instances written by the previous checkpoints
+			JsonObject previous = readJsonFile("all_instances_found");
+			if (previous != null && previous.has("instances"))
+				instances.addAll(previous.getAsJsonArray("instances"));
+		}
 		for (Object revision_commit : finalResult.getAllResults().keySet()) {
 
 			RevisionResult revisionResult = (RevisionResult) finalResult.getAllResults().get(revision_commit);
@@ -64,6 +81,24 @@ public class JSonPatternInstanceOutput implements IOutput {
 		}
 	}
 
+	/**
+	 * 
+	 * @param filename
+	 * @return the content of the json file from the output folder, null if it
+	 *         does not exist
+	 */
+	public JsonObject readJsonFile(String filename) {
+		File fin = new File(ComingProperties.getProperty("output") + File.separator + filename + ".json");
+		if (!fin.exists())
+			return null;
+		try (Reader reader = new FileReader(fin)) {
+			return new JsonParser().parse(reader).getAsJsonObject();
+		} catch (Exception e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
 	public void getInstancesOfRevision(RevisionResult revisionResult, JsonArray instances) {
 
 		String revisionIdentifier = null;
@@ -168,4 +203,10 @@ public class JSonPatternInstanceOutput implements IOutput {
 		saveToJsonFile(root, ("instances_found_rev_" + resultRevision.getRelatedRevision().getName()));
 
 	}
+
+	@Override
+	public Usage getUsage(String analyzerName) {
+		return PatternInstanceAnalyzer.class.getSimpleName().equals(analyzerName) ? Usage.FULL : Usage.NONE;
+	}
+
 }
@@ -22,4 +22,9 @@ public class NullOutput implements IOutput {
 
 	}
 
+	@Override
+	public Usage getUsage(String analyzerName) {
+		return Usage.NONE;
+	}
+
 }
@@ -0,0 +1,120 @@
+package fr.inria.coming.core.entities.output;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+
+import fr.inria.coming.changeminer.analyzer.instancedetector.PatternCountsFromRevision;
+import fr.inria.coming.changeminer.analyzer.instancedetector.PatternInstanceAnalyzer;
+import fr.inria.coming.changeminer.analyzer.instancedetector.SpreadPatternInstanceAnalyzer;
+import fr.inria.coming.changeminer.entity.FinalResult;
+import fr.inria.coming.core.entities.AnalysisResult;
+import fr.inria.coming.core.entities.RevisionResult;
+import fr.inria.coming.core.entities.interfaces.IOutput;
+import fr.inria.coming.main.ComingProperties;
+
+/**
+ * Output of the mining of patterns in the exists and count modes: a CSV table
+ * (pattern_counts.csv) with a row per revision and a column per pattern, whose
+ * cells are the number of instances (count) or 0/1 (exists).
+ *
+ * @author Matias Martinez
+ *
+ */
+public class PatternCountOutput implements IOutput {
+
+	public static final String FILE_NAME = "pattern_counts";
+
+	protected Logger log = Logger.getLogger(PatternCountOutput.class.getName());
+
+	@Override
+	public void generateFinalOutput(FinalResult finalResult) {
+		generateFinalOutput(finalResult, false);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public void generateFinalOutput(FinalResult finalResult, boolean append) {
+		File file = new File(ComingProperties.getProperty("output"), FILE_NAME + ".csv");
+		// The rows of the previous checkpoints are kept
+		append = append && file.exists();
+		StringBuilder table = new StringBuilder();
+		for (Object revision : finalResult.getAllResults().keySet()) {
+			RevisionResult revisionResult = (RevisionResult) finalResult.getAllResults().get(revision);
+			PatternCountsFromRevision counts = getCounts(revisionResult);
+			if (counts == null)
+				continue;
+			if (!append && table.length() == 0)
+				appendHeader(table, counts);
+			appendRow(table, revisionResult, counts);
+		}
+		save(file, table.toString(), append);
+	}
+
+	@Override
+	public void generateRevisionOutput(RevisionResult resultAllAnalyzed) {
+		PatternCountsFromRevision counts = getCounts(resultAllAnalyzed);
+		if (counts == null)
+			return;
+		StringBuilder table = new StringBuilder();
+		appendHeader(table, counts);
+		appendRow(table, resultAllAnalyzed, counts);
+		save(new File(ComingProperties.getProperty("output"),
+				FILE_NAME + "_rev_" + resultAllAnalyzed.getRelatedRevision().getName() + ".csv"), table.toString(),
+				false);
+	}
+
+	protected PatternCountsFromRevision getCounts(RevisionResult revisionResult) {
+		if (revisionResult == null)
+			return null;
+		AnalysisResult result = revisionResult.getResultFromClass(PatternInstanceAnalyzer.class);
+		if (result == null)
+			result = revisionResult.getResultFromClass(SpreadPatternInstanceAnalyzer.class);
+		return (result instanceof PatternCountsFromRevision) ? (PatternCountsFromRevision) result : null;
+	}
+
+	protected void appendHeader(StringBuilder table, PatternCountsFromRevision counts) {
+		table.append("revision");
+		for (int i = 0; i < counts.getCounts().length; i++) {
+			table.append(",").append(escape(counts.getPatternName(i)));
+		}
+		table.append("\n");
+	}
+
+	protected void appendRow(StringBuilder table, RevisionResult revisionResult, PatternCountsFromRevision counts) {
+		table.append(escape(revisionResult.getRelatedRevision().getName()));
+		for (int count : counts.getCounts()) {
+			table.append(",").append(count);
+		}
+		table.append("\n");
+	}
+
+	protected String escape(String value) {
+		if (value.contains(",") || value.contains("\"") || value.contains("\n"))
+			return "\"" + value.replace("\"", "\"\"") + "\"";
+		return value;
+	}
+
+	protected void save(File file, String content, boolean append) {
+		file.getParentFile().mkdirs();
+		try (FileWriter fw = new FileWriter(file, append)) {
+			fw.write(content);
+			log.info("Output saved in " + file.getAbsolutePath());
+		} catch (IOException e) {
+			log.error("Error writing " + file + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Only reads the counts of the pattern analyzers
+	 */
+	@Override
+	public Usage getUsage(String analyzerName) {
+		return (PatternInstanceAnalyzer.class.getSimpleName().equals(analyzerName)
+				|| SpreadPatternInstanceAnalyzer.class.getSimpleName().equals(analyzerName)) ? Usage.FULL
+						: Usage.NONE;
+	}
+
+}
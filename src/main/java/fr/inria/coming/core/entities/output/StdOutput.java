@@ -22,4 +22,13 @@ public class StdOutput implements IOutput {
 
 	}
 
+	/**
+	 * The results are printed, with the diffs as edit scripts when they are
+	 * released
+	 */
+	@Override
+	public Usage getUsage(String analyzerName) {
+		return Usage.SUMMARY;
+	}
+
 }
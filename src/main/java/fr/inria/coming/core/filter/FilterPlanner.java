@@ -0,0 +1,165 @@
+package fr.inria.coming.core.filter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fr.inria.coming.core.entities.interfaces.IFilter;
+
+/**
+ * Evaluates the conjunction of a list of filters, stopping at the first filter
+ * that rejects the element. When adaptive, the filters are periodically
+ * reordered by their expected cost to reject an element (average time of a
+ * call divided by the rate of rejection), both measured during the analysis.
+ * It can be used by several threads.
+ * 
+ * @author Matias Martinez
+ *
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class FilterPlanner<T> implements IFilter<T> {
+
+	protected List<IFilter> filters = null;
+
+	protected List<FilterStats> stats = new ArrayList<>();
+
+	/**
+	 * Current order of evaluation
+	 */
+	protected volatile List<FilterStats> plan = null;
+
+	protected boolean adaptive = true;
+
+	/**
+	 * Number of calls before which a filter is evaluated first to measure it
+	 */
+	protected int minSamples = 10;
+
+	/**
+	 * Number of elements between two reorderings
+	 */
+	protected int replanInterval = 50;
+
+	protected AtomicLong nbElements = new AtomicLong();
+
+	public FilterPlanner(List<IFilter> filters, boolean adaptive) {
+		this.filters = filters;
+		this.adaptive = adaptive;
+		for (int i = 0; i < filters.size(); i++) {
+			stats.add(new FilterStats(filters.get(i), i));
+		}
+		this.plan = new ArrayList<>(stats);
+	}
+
+	@Override
+	public boolean accept(T element) {
+		boolean accepted = true;
+		for (FilterStats filterStats : plan) {
+			long start = System.nanoTime();
+			accepted = filterStats.filter.accept(element);
+			filterStats.record(System.nanoTime() - start, accepted);
+			if (!accepted)
+				break;
+		}
+		if (adaptive && nbElements.incrementAndGet() % replanInterval == 0)
+			replan();
+		return accepted;
+	}
+
+	/**
+	 * Sorts the filters by expected cost to reject an element. The filters not
+	 * measured yet go first, in the order given by the user.
+	 */
+	protected synchronized void replan() {
+		List<FilterStats> newPlan = new ArrayList<>(stats);
+		newPlan.sort(Comparator.comparingDouble(FilterStats::rank)
+				.thenComparingDouble(FilterStats::averageNanos).thenComparingInt(e -> e.position));
+		this.plan = newPlan;
+	}
+
+	public List<IFilter> getFilters() {
+		return filters;
+	}
+
+	/**
+	 * 
+	 * @return the filters in the current order of evaluation
+	 */
+	public List<IFilter> getPlan() {
+		List<IFilter> ordered = new ArrayList<>();
+		for (FilterStats filterStats : plan) {
+			ordered.add(filterStats.filter);
+		}
+		return ordered;
+	}
+
+	public List<FilterStats> getStats() {
+		return stats;
+	}
+
+	public String getSummary() {
+		String r = "Filters (calls, rejected, average time):";
+		for (FilterStats filterStats : plan) {
+			r += "\n" + filterStats;
+		}
+		return r;
+	}
+
+	public class FilterStats {
+
+		protected IFilter filter;
+		protected int position;
+		protected AtomicLong calls = new AtomicLong();
+		protected AtomicLong rejected = new AtomicLong();
+		protected AtomicLong nanos = new AtomicLong();
+
+		public FilterStats(IFilter filter, int position) {
+			this.filter = filter;
+			this.position = position;
+		}
+
+		void record(long time, boolean accepted) {
+			calls.incrementAndGet();
+			nanos.addAndGet(time);
+			if (!accepted)
+				rejected.incrementAndGet();
+		}
+
+		public double averageNanos() {
+			long nbCalls = calls.get();
+			return (nbCalls == 0) ? 0 : (double) nanos.get() / nbCalls;
+		}
+
+		public double rejectRate() {
+			long nbCalls = calls.get();
+			return (nbCalls == 0) ? 0 : (double) rejected.get() / nbCalls;
+		}
+
+		double rank() {
+			if (calls.get() < minSamples)
+				return -1;
+			double rate = rejectRate();
+			return (rate == 0) ? Double.MAX_VALUE : averageNanos() / rate;
+		}
+
+		public IFilter getFilter() {
+			return filter;
+		}
+
+		public long getCalls() {
+			return calls.get();
+		}
+
+		public long getRejected() {
+			return rejected.get();
+		}
+
+		@Override
+		public String toString() {
+			return filter.getClass().getSimpleName() + ": " + calls.get() + ", " + rejected.get() + " ("
+					+ String.format("%.1f", 100 * rejectRate()) + "%), "
+					+ String.format("%.3f", averageNanos() / 1000000) + " ms";
+		}
+	}
+}
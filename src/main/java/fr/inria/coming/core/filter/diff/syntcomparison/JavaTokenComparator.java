@@ -1,5 +1,9 @@
 package fr.inria.coming.core.filter.diff.syntcomparison;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 public class JavaTokenComparator extends FragmentableComparator  {
 
   @Override
@@ -7,4 +11,39 @@ public class JavaTokenComparator extends FragmentableComparator  {
 	  return new SJavaTokenComparator(data);
   }
 
+	/**
+	 * Returns true if both contents have the same tokens, ignoring whitespace,
+	 * comments and the order of the imports: the change between them is only
+	 * formatting, documentation or import reordering.
+	 */
+	public boolean haveSameTokens(String before, String after) {
+		return getTokens(new SJavaTokenComparator(before)).equals(getTokens(new SJavaTokenComparator(after)));
+	}
+
+	/**
+	 * Tokens of a content (without comments), with the imports sorted at the
+	 * beginning.
+	 */
+	protected List<String> getTokens(SJavaTokenComparator tokens) {
+		List<String> imports = new ArrayList<>();
+		List<String> others = new ArrayList<>();
+		int i = 0;
+		while (i < tokens.getRangeCount()) {
+			if ("import".equals(tokens.getToken(i))) {
+				StringBuilder declaration = new StringBuilder();
+				while (i < tokens.getRangeCount() && !";".equals(tokens.getToken(i))) {
+					declaration.append(tokens.getToken(i)).append(" ");
+					i++;
+				}
+				imports.add(declaration.toString());
+			} else {
+				others.add(tokens.getToken(i));
+			}
+			i++;
+		}
+		Collections.sort(imports);
+		imports.addAll(others);
+		return imports;
+	}
+
 }
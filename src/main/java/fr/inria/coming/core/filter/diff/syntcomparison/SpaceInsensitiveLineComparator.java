@@ -0,0 +1,16 @@
+package fr.inria.coming.core.filter.diff.syntcomparison;
+
+/**
+ * Compares lines ignoring spaces and tabs. Unlike {@link LineComparator}, the
+ * braces are considered.
+ */
+public class SpaceInsensitiveLineComparator extends FragmentableComparator {
+
+  @Override
+  public Fragmentable createFragmentable(String data)  {
+		String dataParsed = data.replaceAll(" |\\t", "");
+
+		return new SLineComparator(dataParsed);
+  }
+
+}
@@ -0,0 +1,271 @@
+package fr.inria.coming.main;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import fr.inria.coming.changeminer.entity.FinalResult;
+import fr.inria.coming.core.entities.output.JSonChangeFrequencyOutput;
+import fr.inria.coming.utils.MapCounter;
+import fr.inria.coming.utils.RunSummary;
+
+/**
+ * Mines several git repositories in the same JVM. The repositories are given
+ * in a manifest file, one per line: the path of the repository, optionally
+ * followed by the branch to analyze. Empty lines and lines starting with # are
+ * ignored.
+ *
+ * Each repository is analyzed with the other arguments of the command line,
+ * and its results are stored in its own folder inside the -output folder. A
+ * combined summary of all the repositories is written at the end.
+ *
+ * @author Matias Martinez
+ *
+ */
+public class BatchMining {
+
+	public static final String SUMMARY_FILE_NAME = "batch_summary.json";
+
+	protected Logger log = Logger.getLogger(BatchMining.class.getName());
+
+	/**
+	 * Runs the batch specified by the given arguments (-batch and the common
+	 * arguments of all the repositories) and returns the combined summary.
+	 */
+	public JsonObject run(String[] args) throws Exception {
+		List<String> common = new ArrayList<>();
+		String manifest = null;
+		String output = ComingProperties.getProperty("output");
+		int nbThreads = ComingProperties.getPropertyInteger("batch_threads");
+		for (int i = 0; i < args.length; i++) {
+			if ("-batch".equals(args[i]) && i + 1 < args.length) {
+				manifest = args[++i];
+			} else if ("-output".equals(args[i]) && i + 1 < args.length) {
+				output = args[++i];
+			} else if ("-parameters".equals(args[i]) && i + 1 < args.length) {
+				String[] pars = args[i + 1].split(":");
+				for (int j = 0; j + 1 < pars.length; j = j + 2) {
+					if ("batch_threads".equals(pars[j]))
+						nbThreads = Integer.valueOf(pars[j + 1]);
+				}
+				common.add(args[i]);
+			} else {
+				common.add(args[i]);
+			}
+		}
+		if (manifest == null)
+			throw new IllegalArgumentException("Missing manifest of the batch (-batch)");
+
+		return run(readManifest(new File(manifest)), common, new File(output), nbThreads);
+	}
+
+	public JsonObject run(List<BatchEntry> repositories, List<String> commonArgs, File output, int nbThreads)
+			throws Exception {
+		output.mkdirs();
+		assignOutputFolders(repositories, output);
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, nbThreads));
+		List<Future<JsonObject>> futures = new ArrayList<>();
+		try {
+			for (BatchEntry repository : repositories) {
+				futures.add(executor.submit(() -> mine(repository, commonArgs)));
+			}
+			JsonArray repositoriesJson = new JsonArray();
+			for (Future<JsonObject> future : futures) {
+				repositoriesJson.add(future.get());
+			}
+			JsonObject summary = summarize(repositories, repositoriesJson);
+			save(summary, new File(output, SUMMARY_FILE_NAME));
+			return summary;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Analyzes one repository with its own properties and counters. A failure
+	 * is reported in the summary and does not stop the other repositories.
+	 */
+	protected JsonObject mine(BatchEntry repository, List<String> commonArgs) {
+		JsonObject result = new JsonObject();
+		result.addProperty("location", repository.getLocation());
+		result.addProperty("branch", repository.getBranch());
+		result.addProperty("output", repository.getOutput().getAbsolutePath());
+
+		ComingProperties.openScope();
+		RunSummary.openScope();
+		long start = System.currentTimeMillis();
+		try {
+			repository.getOutput().mkdirs();
+			List<String> args = new ArrayList<>(commonArgs);
+			args.add("-location");
+			args.add(repository.getLocation());
+			args.add("-output");
+			args.add(repository.getOutput().getAbsolutePath());
+			if (repository.getBranch() != null) {
+				args.add("-branch");
+				args.add(repository.getBranch());
+			}
+			log.info("Mining " + repository.getLocation());
+			FinalResult<?> finalResult = new ComingMain().run(args.toArray(new String[0]));
+
+			result.addProperty("status", "ok");
+			result.addProperty("revisions", (finalResult != null) ? finalResult.getAllResults().size() : 0);
+		} catch (Throwable e) {
+			log.error("Error mining " + repository.getLocation(), e);
+			result.addProperty("status", "error");
+			result.addProperty("error", e.toString());
+		} finally {
+			result.addProperty("time_ms", System.currentTimeMillis() - start);
+			JsonObject counters = new JsonObject();
+			for (Map.Entry<String, Long> counter : RunSummary.getCounters().entrySet()) {
+				counters.addProperty(counter.getKey(), counter.getValue());
+			}
+			result.add("counters", counters);
+			RunSummary.closeScope();
+			ComingProperties.closeScope();
+		}
+		return result;
+	}
+
+	/**
+	 * Aggregates the change frequencies and the pattern instances found in the
+	 * output folders of the repositories.
+	 */
+	protected JsonObject summarize(List<BatchEntry> repositories, JsonArray repositoriesJson) {
+		JSonChangeFrequencyOutput frequencies = new JSonChangeFrequencyOutput();
+		MapCounter<String> patterns = new MapCounter<>();
+		for (BatchEntry repository : repositories) {
+			File frequencyFile = new File(repository.getOutput(), JSonChangeFrequencyOutput.FILE_NAME);
+			if (frequencyFile.exists())
+				frequencies.readFrequencies(frequencyFile);
+
+			File instancesFile = new File(repository.getOutput(), "all_instances_found.json");
+			if (instancesFile.exists())
+				countPatterns(instancesFile, patterns);
+		}
+
+		JsonObject summary = new JsonObject();
+		summary.add("repositories", repositoriesJson);
+		JsonObject changes = frequencies.getJSon();
+		summary.add("frequency", changes.get("frequency"));
+		summary.add("frequencyParent", changes.get("frequencyParent"));
+		JsonArray patternCounts = new JsonArray();
+		@SuppressWarnings("unchecked")
+		Map<String, Integer> sortedPatterns = patterns.sorted();
+		for (Map.Entry<String, Integer> pattern : sortedPatterns.entrySet()) {
+			JsonObject patternJson = new JsonObject();
+			patternJson.addProperty("pattern_name", pattern.getKey());
+			patternJson.addProperty("instances", pattern.getValue());
+			patternCounts.add(patternJson);
+		}
+		summary.add("patterns", patternCounts);
+		return summary;
+	}
+
+	private void countPatterns(File instancesFile, MapCounter<String> patterns) {
+		try (Reader reader = Files.newBufferedReader(instancesFile.toPath())) {
+			JsonObject root = new JsonParser().parse(reader).getAsJsonObject();
+			JsonArray instances = root.getAsJsonArray("instances");
+			if (instances == null)
+				return;
+			for (JsonElement instance : instances) {
+				JsonElement name = instance.getAsJsonObject().get("pattern_name");
+				patterns.add((name == null || name.isJsonNull()) ? "null" : name.getAsString());
+			}
+		} catch (Exception e) {
+			log.error("Error reading " + instancesFile, e);
+		}
+	}
+
+	private void save(JsonObject summary, File file) {
+		Gson gson = new GsonBuilder().setPrettyPrinting().create();
+		String prettyJsonString = gson.toJson(summary);
+		System.out.println("\nJSON Batch Summary: (file stored at " + file.getAbsolutePath() + ")\n");
+		try (FileWriter fw = new FileWriter(file)) {
+			fw.write(prettyJsonString);
+		} catch (Exception e) {
+			log.error("Error saving " + file, e);
+		}
+	}
+
+	/**
+	 * Each repository is stored in a folder named after it, with a suffix when
+	 * two repositories have the same name.
+	 */
+	private void assignOutputFolders(List<BatchEntry> repositories, File output) {
+		Set<String> names = new HashSet<>();
+		for (int i = 0; i < repositories.size(); i++) {
+			BatchEntry repository = repositories.get(i);
+			String name = new File(repository.getLocation()).getName();
+			if (repository.getBranch() != null)
+				name += "_" + repository.getBranch().replaceAll("[^A-Za-z0-9._-]", "_");
+			if (!names.add(name))
+				name += "_" + i;
+			repository.setOutput(new File(output, name));
+		}
+	}
+
+	public List<BatchEntry> readManifest(File manifest) throws Exception {
+		List<BatchEntry> repositories = new ArrayList<>();
+		for (String line : Files.readAllLines(manifest.toPath())) {
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#"))
+				continue;
+			String[] columns = line.split("\\s+");
+			repositories.add(new BatchEntry(columns[0], (columns.length > 1) ? columns[1] : null));
+		}
+		return repositories;
+	}
+
+	public static class BatchEntry {
+
+		private String location;
+		private String branch;
+		private File output;
+
+		public BatchEntry(String location, String branch) {
+			this.location = location;
+			this.branch = branch;
+		}
+
+		public String getLocation() {
+			return location;
+		}
+
+		public String getBranch() {
+			return branch;
+		}
+
+		public File getOutput() {
+			return output;
+		}
+
+		public void setOutput(File output) {
+			this.output = output;
+		}
+
+		@Override
+		public String toString() {
+			return location + ((branch != null) ? " " + branch : "");
+		}
+	}
+}
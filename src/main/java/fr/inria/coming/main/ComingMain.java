@@ -18,6 +18,7 @@ import org.apache.log4j.Logger;
 import fr.inria.coming.changeminer.analyzer.commitAnalyzer.FineGrainDifftAnalyzer;
 import fr.inria.coming.changeminer.analyzer.commitAnalyzer.HunkDifftAnalyzer;
 import fr.inria.coming.changeminer.analyzer.instancedetector.PatternInstanceAnalyzer;
+import fr.inria.coming.changeminer.analyzer.instancedetector.PatternMiningMode;
 import fr.inria.coming.changeminer.analyzer.instancedetector.SpreadPatternInstanceAnalyzer;
 import fr.inria.coming.changeminer.analyzer.patternspecification.ChangePatternSpecification;
 import fr.inria.coming.changeminer.analyzer.patternspecification.PatternAction;
@@ -38,6 +39,7 @@ import fr.inria.coming.core.entities.interfaces.IOutput;
 import fr.inria.coming.core.entities.output.FeaturesOutput;
 import fr.inria.coming.core.entities.output.JSonChangeFrequencyOutput;
 import fr.inria.coming.core.entities.output.JSonPatternInstanceOutput;
+import fr.inria.coming.core.entities.output.PatternCountOutput;
 import fr.inria.coming.core.entities.output.StdOutput;
 import fr.inria.coming.core.extensionpoints.PlugInLoader;
 import fr.inria.coming.core.extensionpoints.changepattern.PatternFileParser;
@@ -108,7 +110,33 @@ public class ComingMain {
 		options.addOption(Option.builder("branch").argName("branch name").hasArg()
 				.desc("In case of -input=\'git\', use this branch name. Default is master.").build());
 		options.addOption("message", true, "comming message");
+		options.addOption(Option.builder("since").argName("commit | date").hasArg()
+				.desc("In case of -input=\'git\', only the commits after this commit (excluded) or date (yyyy-MM-dd)")
+				.build());
+		options.addOption(Option.builder("until").argName("commit | date").hasArg()
+				.desc("In case of -input=\'git\', only the commits until this commit (included) or date (yyyy-MM-dd)")
+				.build());
+		options.addOption("incremental", true,
+				"if true, only mine the commits after the last one mined in a previous execution with the same -output");
+		options.addOption(Option.builder("includepath").argName("paths").hasArg()
+				.desc("In case of -input=\'git\', only consider the files under these paths, separated by "
+						+ File.pathSeparator)
+				.build());
+		options.addOption(Option.builder("excludepath").argName("paths").hasArg()
+				.desc("In case of -input=\'git\', ignore the files under these paths (e.g., src/test), separated by "
+						+ File.pathSeparator)
+				.build());
 		options.addOption("parameters", true, "Parameters, divided by " + File.pathSeparator);
+		options.addOption(Option.builder("batch").argName("path").hasArg()
+				.desc("mine the git repositories listed in the given file, one per line (path and optionally branch), "
+						+ "with the rest of the arguments. Each one has its output in a folder inside -output")
+				.build());
+		options.addOption(Option.builder("matcherbenchmark").argName("path").hasArg()
+				.desc("compare the time and the size of the diffs of the matcher strategies on the pairs of files "
+						+ "(*_s.java and *_t.java) of the given folder, e.g. src/main/resources/Defects4J_all_pairs")
+				.build());
+		options.addOption("resume", true,
+				"if true, resume the analysis from the checkpoint found in the -output folder");
 
 		// repairability module parameter
 		options.addOption(Option.builder("repairtool").argName(RepairTools.getCLISupportString()).hasArg().desc(
@@ -134,6 +162,12 @@ public class ComingMain {
 	@SuppressWarnings("rawtypes")
 	public FinalResult run(String[] args) throws Exception {
 
+		if (Arrays.asList(args).contains("-batch")) {
+			ComingProperties.reset();
+			new BatchMining().run(args);
+			return null;
+		}
+
 		boolean created = createEngine(args);
 		if (!created)
 			return null;
@@ -190,7 +224,7 @@ public class ComingMain {
 
 			if (cmd.hasOption(option.getOpt())) {
 				String value = cmd.getOptionValue(option.getOpt());
-				ComingProperties.properties.setProperty(option.getOpt(), value);
+				ComingProperties.setProperty(option.getOpt(), value);
 			}
 
 		}
@@ -204,11 +238,21 @@ public class ComingMain {
 			for (int i = 0; i < pars.length; i = i + 2) {
 				String key = pars[i];
 				String value = pars[i + 1];
-				ComingProperties.properties.setProperty(key, value);
+				ComingProperties.setProperty(key, value);
 
 			}
 		}
 
+		if (cmd.hasOption("matcherbenchmark")) {
+			try {
+				new MatcherBenchmark().run(new File(cmd.getOptionValue("matcherbenchmark")),
+						new File(ComingProperties.getProperty("output")), MatcherBenchmark.getStrategies());
+			} catch (Exception e) {
+				throw new RuntimeException("Error running the matcher benchmark", e);
+			}
+			return false;
+		}
+
 		String mode = ComingProperties.getProperty("mode");
 		String input = ComingProperties.getProperty("input");
 
@@ -265,16 +309,26 @@ public class ComingMain {
 				navigatorEngine.getAnalyzers().add(new FineGrainDifftAnalyzer());
 
 				List<ChangePatternSpecification> patterns = loadPattern();
+				PatternMiningMode miningMode = PatternMiningMode.fromProperties();
 
 				// Determine instance matcher
-				if (ComingProperties.getPropertyBoolean("spreadPattern"))
-					navigatorEngine.getAnalyzers().add(new SpreadPatternInstanceAnalyzer(patterns));
-				else
+				if (ComingProperties.getPropertyBoolean("spreadPattern")) {
+					SpreadPatternInstanceAnalyzer analyzer = new SpreadPatternInstanceAnalyzer(patterns);
+					analyzer.setMiningMode(miningMode);
+					navigatorEngine.getAnalyzers().add(analyzer);
+				} else {
 					// default
-					navigatorEngine.getAnalyzers().add(new PatternInstanceAnalyzer(patterns));
+					PatternInstanceAnalyzer analyzer = new PatternInstanceAnalyzer(patterns);
+					analyzer.setMiningMode(miningMode);
+					navigatorEngine.getAnalyzers().add(analyzer);
+				}
 
-				// By default JSON output of pattern instances
-				navigatorEngine.getOutputProcessors().add(new JSonPatternInstanceOutput());
+				if (PatternMiningMode.INSTANCES.equals(miningMode))
+					// By default JSON output of pattern instances
+					navigatorEngine.getOutputProcessors().add(new JSonPatternInstanceOutput());
+				else
+					// Table of the existence or number of instances
+					navigatorEngine.getOutputProcessors().add(new PatternCountOutput());
 
 			} else if ("features".equals(mode)) {
 				navigatorEngine.getAnalyzers().clear();
@@ -12,40 +12,74 @@ public class ComingProperties {
 
 	public static Properties properties;
 
+	/**
+	 * Properties of the analysis run by the current thread (and the threads it
+	 * creates), used when several analyses run in the same JVM (e.g., batch
+	 * mode). When there is no scope, the global properties are used.
+	 */
+	private static InheritableThreadLocal<Properties> scoped = new InheritableThreadLocal<>();
+
 	static {
 		reset();
 	}
 
 	public static void reset() {
+		if (scoped.get() != null) {
+			scoped.set(load());
+		} else {
+			properties = load();
+		}
+	}
+
+	private static Properties load() {
 		InputStream propFile;
 		try {
-			properties = new Properties();
+			Properties loaded = new Properties();
 			propFile = ComingProperties.class.getClassLoader().getResourceAsStream("configuration.properties");
 
-			properties.load(propFile);
+			loaded.load(propFile);
+			return loaded;
 		} catch (Exception e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	/**
+	 * The current thread (and the threads it creates afterwards) stops sharing
+	 * the global properties and uses its own ones, initialized with the default
+	 * values.
+	 */
+	public static void openScope() {
+		scoped.set(load());
+	}
+
+	public static void closeScope() {
+		scoped.remove();
+	}
+
+	private static Properties current() {
+		Properties local = scoped.get();
+		return (local != null) ? local : properties;
+	}
+
 	public static void setProperty(String key, String value) {
-		properties.setProperty(key, value);
+		current().setProperty(key, value);
 	}
 
 	public static String getProperty(String key) {
-		return properties.getProperty(key);
+		return current().getProperty(key);
 	}
 
 	public static Integer getPropertyInteger(String key) {
-		return Integer.valueOf(properties.getProperty(key));
+		return Integer.valueOf(current().getProperty(key));
 	}
 
 	public static Boolean getPropertyBoolean(String key) {
-		return Boolean.valueOf(properties.getProperty(key));
+		return Boolean.valueOf(current().getProperty(key));
 	}
 
 	public static Double getPropertyDouble(String key) {
-		return Double.valueOf(properties.getProperty(key));
+		return Double.valueOf(current().getProperty(key));
 	}
 
 	public static void main(String[] s) {
@@ -0,0 +1,220 @@
+package fr.inria.coming.main;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import fr.inria.coming.changeminer.analyzer.DiffEngineFacade;
+import fr.inria.coming.changeminer.analyzer.MatcherStrategy;
+import fr.inria.coming.changeminer.entity.GranuralityType;
+import gumtree.spoon.diff.Diff;
+
+/**
+ * Compares the matcher strategies on a corpus of pairs of files (e.g.,
+ * Defects4J_all_pairs): for each strategy, the time to compute the diffs and
+ * the size of the edit scripts.
+ *
+ * GumTree reads its thresholds once per JVM (see {@link MatcherStrategy}), so
+ * each strategy is measured in its own JVM, launched with the classpath of the
+ * current one.
+ *
+ * The pairs are the files named *_s.java (before) and *_t.java (after) in the
+ * same folder.
+ *
+ * @author Matias Martinez
+ *
+ */
+public class MatcherBenchmark {
+
+	public static final String FILE_NAME = "matcher_benchmark.json";
+
+	/**
+	 * Argument of the JVM measuring one strategy
+	 */
+	protected static final String MEASURE = "-measure";
+
+	protected Logger log = Logger.getLogger(MatcherBenchmark.class.getName());
+
+	/**
+	 * Number of pairs compared before measuring, so the strategy does not pay
+	 * the warm-up of the JVM
+	 */
+	protected int warmup = 10;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0 && args[0].equals(MEASURE)) {
+			measureStrategy(args);
+			return;
+		}
+		if (args.length == 0) {
+			System.out.println("Usage: MatcherBenchmark <corpus folder> [output folder]");
+			return;
+		}
+		File output = new File((args.length > 1) ? args[1] : ComingProperties.getProperty("output"));
+		new MatcherBenchmark().run(new File(args[0]), output, getStrategies());
+	}
+
+	/**
+	 * The predefined strategies, and the custom one if it is the one selected by
+	 * the property matcher_strategy.
+	 */
+	public static List<MatcherStrategy> getStrategies() {
+		List<MatcherStrategy> strategies = new ArrayList<>(
+				Arrays.asList(MatcherStrategy.CLASSIC, MatcherStrategy.FAST, MatcherStrategy.TOPDOWN));
+		if (MatcherStrategy.getSelected() == MatcherStrategy.CUSTOM)
+			strategies.add(MatcherStrategy.CUSTOM);
+		return strategies;
+	}
+
+	public JsonObject run(File corpus, File output, List<MatcherStrategy> strategies) throws Exception {
+		log.info("Benchmark of " + strategies + " on " + corpus);
+
+		output.mkdirs();
+		JsonArray results = new JsonArray();
+		for (MatcherStrategy strategy : strategies) {
+			JsonObject result = runInJvm(corpus, output, strategy);
+			results.add(result);
+			System.out.println(String.format("%-8s time: %8d ms, root operations: %6d, operations: %7d, failed: %d",
+					strategy.name().toLowerCase(), result.get("time_ms").getAsLong(),
+					result.get("root_operations").getAsLong(), result.get("operations").getAsLong(),
+					result.get("failed").getAsInt()));
+		}
+
+		JsonObject root = new JsonObject();
+		root.addProperty("corpus", corpus.getAbsolutePath());
+		root.add("strategies", results);
+		try (FileWriter fw = new FileWriter(new File(output, FILE_NAME))) {
+			fw.write(new GsonBuilder().setPrettyPrinting().create().toJson(root));
+		}
+		return root;
+	}
+
+	/**
+	 * Measures a strategy in a new JVM, which writes its result in the output
+	 * folder
+	 */
+	protected JsonObject runInJvm(File corpus, File output, MatcherStrategy strategy) throws Exception {
+		File resultFile = new File(output, "matcher_benchmark_" + strategy.name().toLowerCase() + ".json");
+		MatcherStrategy.Thresholds thresholds = strategy.getThresholds();
+		List<String> command = new ArrayList<>(Arrays.asList(
+				new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath(), "-classpath",
+				System.getProperty("java.class.path"), MatcherBenchmark.class.getName(), MEASURE,
+				corpus.getAbsolutePath(), resultFile.getAbsolutePath(), Integer.toString(warmup), strategy.name(),
+				// The thresholds of the custom strategy are given by the properties of this JVM
+				Double.toString(thresholds.getSimilarityThreshold()),
+				Integer.toString(thresholds.getSizeThreshold()), Integer.toString(thresholds.getMinHeight())));
+		Process process = new ProcessBuilder(command).inheritIO().start();
+		int exitCode = process.waitFor();
+		if (exitCode != 0 || !resultFile.exists())
+			throw new IllegalStateException(
+					"The benchmark of the matcher strategy " + strategy + " failed (exit code " + exitCode + ")");
+		try {
+			return new JsonParser().parse(new String(Files.readAllBytes(resultFile.toPath()), StandardCharsets.UTF_8))
+					.getAsJsonObject();
+		} finally {
+			resultFile.delete();
+		}
+	}
+
+	/**
+	 * Entry point of the JVM measuring a strategy: -measure &lt;corpus&gt;
+	 * &lt;result file&gt; &lt;warm-up&gt; &lt;strategy&gt; &lt;gt.bum.smt&gt;
+	 * &lt;gt.bum.szt&gt; &lt;gt.stm.mh&gt;
+	 */
+	protected static void measureStrategy(String[] args) throws Exception {
+		MatcherStrategy strategy = MatcherStrategy.valueOf(args[4]);
+		ComingProperties.setProperty("matcher_bum_smt", args[5]);
+		ComingProperties.setProperty("matcher_bum_szt", args[6]);
+		ComingProperties.setProperty("matcher_stm_mh", args[7]);
+
+		MatcherBenchmark benchmark = new MatcherBenchmark();
+		benchmark.setWarmup(Integer.valueOf(args[3]));
+		JsonObject result = benchmark.measure(new File(args[1]), strategy);
+		try (FileWriter fw = new FileWriter(new File(args[2]))) {
+			fw.write(result.toString());
+		}
+	}
+
+	/**
+	 * Measures a strategy in the current JVM
+	 *
+	 * @throws IllegalStateException if the matchers of this JVM already use
+	 *                               another strategy
+	 */
+	public JsonObject measure(File corpus, MatcherStrategy strategy) {
+		List<File[]> pairs = new ArrayList<>();
+		findPairs(corpus, pairs);
+		log.info("Benchmark of " + strategy + " on " + pairs.size() + " pairs of " + corpus);
+
+		// Before any comparison, so the warm-up loads the matchers with the
+		// thresholds of the strategy
+		strategy.apply();
+		DiffEngineFacade facade = new DiffEngineFacade(0);
+		for (int i = 0; i < Math.min(warmup, pairs.size()); i++) {
+			compare(facade, pairs.get(i));
+		}
+
+		long nbRootOperations = 0;
+		long nbOperations = 0;
+		int nbFailed = 0;
+		long start = System.nanoTime();
+		for (File[] pair : pairs) {
+			Diff diff = compare(facade, pair);
+			if (diff == null) {
+				nbFailed++;
+			} else {
+				nbRootOperations += diff.getRootOperations().size();
+				nbOperations += diff.getAllOperations().size();
+			}
+		}
+		long timeMs = (System.nanoTime() - start) / 1000000;
+
+		JsonObject result = MatcherStrategy.getCurrentJson();
+		result.addProperty("pairs", pairs.size());
+		result.addProperty("failed", nbFailed);
+		result.addProperty("time_ms", timeMs);
+		result.addProperty("mean_time_ms", pairs.isEmpty() ? 0 : (double) timeMs / pairs.size());
+		result.addProperty("root_operations", nbRootOperations);
+		result.addProperty("operations", nbOperations);
+		return result;
+	}
+	protected Diff compare(DiffEngineFacade facade, File[] pair) {
+		try {
+			return facade.compareFiles(pair[0], pair[1], GranuralityType.SPOON);
+		} catch (Throwable e) {
+			log.debug("Error comparing " + pair[0] + ": " + e);
+			return null;
+		}
+	}
+
+	protected void findPairs(File folder, List<File[]> pairs) {
+		File[] files = folder.listFiles();
+		if (files == null)
+			return;
+		Arrays.sort(files);
+		for (File file : files) {
+			if (file.isDirectory()) {
+				findPairs(file, pairs);
+			} else if (file.getName().endsWith("_s.java")) {
+				File target = new File(folder, file.getName().replace("_s.java", "_t.java"));
+				if (target.exists())
+					pairs.add(new File[] { file, target });
+			}
+		}
+	}
+
+	public void setWarmup(int warmup) {
+		this.warmup = warmup;
+	}
+}
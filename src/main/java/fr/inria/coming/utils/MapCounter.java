@@ -29,6 +29,18 @@ public class MapCounter<K> extends HashMap<K, Integer> {
 		}
 	}
 
+	public void add(K key, int count) {
+		changeSinceLastCreation = true;
+		Integer i = this.get(key);
+		this.put(key, (i == null) ? count : i + count);
+	}
+
+	@Override
+	public void clear() {
+		changeSinceLastCreation = true;
+		super.clear();
+	}
+
 	public void printSort() {
 		this.entrySet().stream().sorted(Map.Entry.<K, Integer>comparingByValue().reversed())
 				.forEach(System.out::println);
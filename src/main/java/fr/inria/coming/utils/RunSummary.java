@@ -0,0 +1,76 @@
+package fr.inria.coming.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the current analysis (e.g., hits of a cache, skipped elements)
+ * shared by all components and threads. They are reset at the beginning of
+ * each analysis and printed at the end.
+ * 
+ * @author Matias Martinez
+ *
+ */
+public class RunSummary {
+
+	private static Map<String, AtomicLong> counters = new ConcurrentSkipListMap<>();
+
+	/**
+	 * Counters of the analysis run by the current thread (and the threads it
+	 * creates), when several analyses run in the same JVM (e.g., batch mode).
+	 */
+	private static InheritableThreadLocal<Map<String, AtomicLong>> scoped = new InheritableThreadLocal<>();
+
+	public static void openScope() {
+		scoped.set(new ConcurrentSkipListMap<>());
+	}
+
+	public static void closeScope() {
+		scoped.remove();
+	}
+
+	private static Map<String, AtomicLong> current() {
+		Map<String, AtomicLong> local = scoped.get();
+		return (local != null) ? local : counters;
+	}
+
+	public static void reset() {
+		current().clear();
+	}
+
+	public static void increment(String key) {
+		add(key, 1);
+	}
+
+	public static void add(String key, long value) {
+		current().computeIfAbsent(key, k -> new AtomicLong()).addAndGet(value);
+	}
+
+	public static long get(String key) {
+		AtomicLong counter = current().get(key);
+		return (counter == null) ? 0 : counter.get();
+	}
+
+	public static Map<String, Long> getCounters() {
+		Map<String, AtomicLong> current = current();
+		Map<String, Long> values = new LinkedHashMap<>();
+		for (String key : current.keySet()) {
+			values.put(key, current.get(key).get());
+		}
+		return values;
+	}
+
+	public static boolean isEmpty() {
+		return current().isEmpty();
+	}
+
+	public static String getSummary() {
+		String r = "Summary:";
+		for (Map.Entry<String, Long> counter : getCounters().entrySet()) {
+			r += "\n" + counter.getKey() + ": " + counter.getValue();
+		}
+		return r;
+	}
+}
@@ -4,12 +4,18 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.ConsoleAppender;
 import org.apache.log4j.Level;
@@ -19,24 +25,40 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.github.gumtreediff.matchers.Matcher;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 
+import fr.inria.coming.changeminer.analyzer.DiffCache;
 import fr.inria.coming.changeminer.analyzer.commitAnalyzer.FineGrainDifftAnalyzer;
 import fr.inria.coming.changeminer.analyzer.commitAnalyzer.HunkDifftAnalyzer;
 import fr.inria.coming.changeminer.entity.CommitFinalResult;
+import fr.inria.coming.changeminer.entity.DiskResultStore;
 import fr.inria.coming.changeminer.entity.FinalResult;
 import fr.inria.coming.changeminer.entity.IRevision;
+import fr.inria.coming.core.engine.RevisionCheckpoint;
 import fr.inria.coming.core.engine.callback.IntermediateResultProcessorCallback;
+import fr.inria.coming.core.engine.files.FileDiff;
+import fr.inria.coming.core.engine.git.CommitGit;
+import fr.inria.coming.core.engine.git.GitBlobLoader;
+import fr.inria.coming.core.engine.git.RepositoryPGit;
+import fr.inria.coming.core.entities.AnalysisResult;
 import fr.inria.coming.core.entities.DiffResult;
+import fr.inria.coming.core.entities.EditScript;
+import fr.inria.coming.core.entities.EditScriptResult;
 import fr.inria.coming.core.entities.HunkDiff;
 import fr.inria.coming.core.entities.RevisionResult;
 import fr.inria.coming.core.entities.interfaces.Commit;
 import fr.inria.coming.core.entities.interfaces.FileCommit;
 import fr.inria.coming.core.entities.interfaces.IFilter;
 import fr.inria.coming.core.entities.output.JSonChangeFrequencyOutput;
+import fr.inria.coming.core.filter.FilterPlanner;
 import fr.inria.coming.core.filter.commitmessage.BugfixKeywordsFilter;
 import fr.inria.coming.core.filter.commitmessage.KeyWordsMessageFilter;
 import fr.inria.coming.core.filter.diff.NbHunkFilter;
 import fr.inria.coming.core.filter.files.CommitSizeFilter;
+import fr.inria.coming.main.BatchMining;
 import fr.inria.coming.main.ComingMain;
 import fr.inria.coming.main.ComingProperties;
 import fr.inria.coming.spoon.core.dummies.MyTestAnalyzer;
@@ -45,7 +67,10 @@ import fr.inria.coming.spoon.core.dummies.MyTestInput;
 import fr.inria.coming.spoon.core.dummies.MyTestOutput;
 import fr.inria.coming.spoon.core.dummies.MyTestParser;
 import fr.inria.coming.utils.CommandSummary;
+import fr.inria.coming.utils.RunSummary;
+import gumtree.spoon.AstComparator;
 import gumtree.spoon.diff.Diff;
+import gumtree.spoon.diff.operations.Operation;
 
 /**
  * 
@@ -243,6 +268,516 @@ public class MainComingTest {
 
 	}
 
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testParallelAnalysisKeepsOrder() throws Exception {
+		ComingMain cm = new ComingMain();
+		Boolean created = cm.createEngine(new String[] { "-location", "repogit4testv0", "-hunkanalysis", "true",
+				"-parameters", "nb_threads:4" });
+		assertTrue(created);
+		List<String> commitsInOrder = new ArrayList<>();
+		for (String commit : this.commitsId) {
+			commitsInOrder.add(commit);
+		}
+		cm.registerIntermediateCallback(new IntermediateResultProcessorCallback() {
+			int currentIndex = 0;
+
+			@Override
+			public void handleResult(RevisionResult result) {
+				assertEquals(currentIndex, commitsInOrder.indexOf(result.getRelatedRevision().getName()));
+				currentIndex++;
+			}
+		});
+		FinalResult finalresult = cm.start();
+		assertNotNull(finalresult);
+		Map<Commit, RevisionResult> commits = finalresult.getAllResults();
+		assertEquals(commitsInOrder.size(), commits.size());
+
+		int currentIndex = 0;
+		for (Commit commit : commits.keySet()) {
+			assertEquals(currentIndex, commitsInOrder.indexOf(commit.getName()));
+			currentIndex++;
+		}
+
+		assertCommit(commits, 2, "6dac8ae81bd03bcae1e1fade064d3bb03de472c0");
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testParallelAnalysisMaxRevision() throws Exception {
+		ComingMain cm = new ComingMain();
+		FinalResult finalresult = cm.run(
+				new String[] { "-location", "repogit4testv0", "-parameters", "nb_threads:3:maxrevision:4" });
+		assertNotNull(finalresult);
+		assertEquals(4, finalresult.getAllResults().size());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testParallelFileDiffs() throws Exception {
+		ComingMain cm = new ComingMain();
+		FinalResult sequential = cm.run(new String[] { "-location", "repogit4testv0" });
+		FinalResult parallel = cm.run(new String[] { "-location", "repogit4testv0", "-parameters", "nb_diff_threads:4" });
+		Map<Commit, RevisionResult> sequentialCommits = sequential.getAllResults();
+		Map<Commit, RevisionResult> parallelCommits = parallel.getAllResults();
+		assertEquals(sequentialCommits.size(), parallelCommits.size());
+
+		List<RevisionResult> parallelResults = new ArrayList<>(parallelCommits.values());
+		int i = 0;
+		for (RevisionResult sequentialResult : sequentialCommits.values()) {
+			Map<String, Diff> sequentialDiffs = ((DiffResult<Commit, Diff>) sequentialResult
+					.getResultFromClass(FineGrainDifftAnalyzer.class)).getDiffOfFiles();
+			Map<String, Diff> parallelDiffs = ((DiffResult<Commit, Diff>) parallelResults.get(i)
+					.getResultFromClass(FineGrainDifftAnalyzer.class)).getDiffOfFiles();
+			// Same files, in the same order, with the same changes
+			assertEquals(new ArrayList<>(sequentialDiffs.keySet()), new ArrayList<>(parallelDiffs.keySet()));
+			for (String file : sequentialDiffs.keySet()) {
+				assertEquals(sequentialDiffs.get(file).getRootOperations().toString(),
+						parallelDiffs.get(file).getRootOperations().toString());
+			}
+			i++;
+		}
+	}
+
+	@Test
+	public void testSpilledResultsAreReadBack() throws Exception {
+		FinalResult<IRevision> finalresult = new FinalResult<>();
+		finalresult.spillTo(new DiskResultStore<>(), 1);
+
+		List<IRevision> revisions = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			IRevision revision = new FileDiff(new File("revision" + i));
+			revisions.add(revision);
+			RevisionResult result = new RevisionResult(revision);
+			result.put("MyTestAnalyzer", new AnalysisResult<IRevision>(revision));
+			finalresult.put(revision, result);
+		}
+		// Only the last result is in memory
+		assertEquals(3, finalresult.getStore().getNbStored());
+		assertEquals(4, finalresult.getAllResults().size());
+
+		int i = 0;
+		for (Map.Entry<IRevision, RevisionResult> entry : finalresult.getAllResults().entrySet()) {
+			assertSame(revisions.get(i), entry.getKey());
+			assertSame(entry.getKey(), entry.getValue().getRelatedRevision());
+			assertSame(entry.getKey(), entry.getValue().get("MyTestAnalyzer").getAnalyzed());
+			i++;
+		}
+		assertEquals(4, i);
+		assertNull(finalresult.get(new FileDiff(new File("revision0"))));
+
+		// The views inherited from the map also read the spilled results
+		i = 0;
+		for (RevisionResult result : finalresult.values()) {
+			assertSame(revisions.get(i), result.getRelatedRevision());
+			i++;
+		}
+		assertEquals(4, i);
+		List<IRevision> visited = new ArrayList<>();
+		finalresult.forEach((revision, result) -> {
+			assertSame(revision, result.getRelatedRevision());
+			visited.add(revision);
+		});
+		assertEquals(revisions, visited);
+		for (Map.Entry<IRevision, RevisionResult> entry : finalresult.entrySet()) {
+			assertNotNull(entry.getValue());
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void testSpilledDiffsAreCompacted() throws Exception {
+		FinalResult<IRevision> finalresult = new FinalResult<>();
+		finalresult.spillTo(new DiskResultStore<>(), 1);
+		Diff diff = new AstComparator().compare("class X { void foo() { int a = 1; } }",
+				"class X { void foo() { int a = 2; } }");
+
+		List<IRevision> revisions = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			IRevision revision = new FileDiff(new File("revision" + i));
+			revisions.add(revision);
+			RevisionResult result = new RevisionResult(revision);
+			Map<String, Diff> diffs = new LinkedHashMap<>();
+			diffs.put("X.java", diff);
+			result.put("FineGrainDifftAnalyzer", new DiffResult<IRevision, Diff>(revision, diffs));
+			finalresult.put(revision, result);
+		}
+		// The diffs are spilled as edit scripts
+		assertEquals(2, finalresult.getStore().getNbStored());
+		AnalysisResult spilled = finalresult.get(revisions.get(0)).get("FineGrainDifftAnalyzer");
+		assertTrue(spilled instanceof EditScriptResult);
+		assertEquals(diff.getRootOperations().size(),
+				((EditScriptResult<IRevision>) spilled).getEditScripts().get("X.java").getRootOperations().size());
+
+		// A result that is not serializable (the anonymous class references the
+		// test) is kept in memory, and the next ones are not serialized again
+		finalresult = new FinalResult<>();
+		finalresult.spillTo(new DiskResultStore<>(), 1);
+		for (int i = 0; i < 3; i++) {
+			IRevision revision = revisions.get(i);
+			RevisionResult result = new RevisionResult(revision);
+			result.put("MyTestAnalyzer", new AnalysisResult<IRevision>(revision) {
+			});
+			finalresult.put(revision, result);
+		}
+		assertEquals(0, finalresult.getStore().getNbStored());
+		assertEquals(2, finalresult.getStore().getNbNotSerializable());
+		assertEquals(1, finalresult.getStore().getNotSerializable().size());
+		assertEquals(3, finalresult.getAllResults().size());
+	}
+
+	@Test
+	public void testResumeFromCheckpoint() throws Exception {
+		String output = Files.createTempDirectory("coming_checkpoint").toFile().getAbsolutePath();
+
+		ComingMain cm = new ComingMain();
+		FinalResult finalresult = cm.run(new String[] { "-location", "repogit4testv0", "-output", output,
+				"-parameters", "checkpoint:true:checkpoint_interval:2:maxrevision:5" });
+		assertEquals(5, finalresult.getAllResults().size());
+
+		RevisionCheckpoint checkpoint = RevisionCheckpoint.fromOutputFolder(output);
+		assertTrue(checkpoint.exists());
+		checkpoint.load();
+		assertEquals(4, checkpoint.getIndex());
+		assertEquals(commitsId[4], checkpoint.getRevision());
+		assertEquals(5, checkpoint.getNbAnalyzed());
+
+		cm = new ComingMain();
+		finalresult = cm.run(new String[] { "-location", "repogit4testv0", "-output", output, "-resume", "true" });
+		Map<Commit, RevisionResult> commits = finalresult.getAllResults();
+		assertEquals(commitsId.length - 5, commits.size());
+		assertEquals(commitsId[5], commits.keySet().iterator().next().getName());
+
+		checkpoint.load();
+		assertEquals(commitsId.length - 1, checkpoint.getIndex());
+		assertEquals(commitsId.length, checkpoint.getNbAnalyzed());
+	}
+
+	@Test
+	public void testResumeAfterOutputsWrittenWithoutJournal() throws Exception {
+		List<String> frequencies = new ArrayList<>();
+		for (boolean killed : new boolean[] { false, true }) {
+			String output = Files.createTempDirectory("coming_checkpoint").toFile().getAbsolutePath();
+			File frequency = new File(output, JSonChangeFrequencyOutput.FILE_NAME);
+
+			ComingMain cm = new ComingMain();
+			cm.run(new String[] { "-location", "repogit4testv0", "-output", output, "-parameters",
+					"checkpoint:true:checkpoint_interval:2:maxrevision:5" });
+			if (killed) {
+				// The outputs of the next revisions were written, but not the journal
+				Files.write(frequency.toPath(), "{\"frequency\":[],\"frequencyParent\":[]}".getBytes());
+			}
+
+			cm = new ComingMain();
+			cm.run(new String[] { "-location", "repogit4testv0", "-output", output, "-resume", "true" });
+			frequencies.add(new String(Files.readAllBytes(frequency.toPath())));
+		}
+		assertEquals(frequencies.get(0), frequencies.get(1));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void testFilterPlanner() throws Exception {
+		AtomicInteger callsSlowFilter = new AtomicInteger();
+		IFilter slowAcceptAll = e -> {
+			callsSlowFilter.incrementAndGet();
+			try {
+				Thread.sleep(1);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			return true;
+		};
+		IFilter rejectAll = e -> false;
+		List<IFilter> filters = new ArrayList<>();
+		filters.add(slowAcceptAll);
+		filters.add(rejectAll);
+
+		// Given order: the slow filter is always executed
+		FilterPlanner planner = new FilterPlanner<>(filters, false);
+		for (int i = 0; i < 100; i++) {
+			assertFalse(planner.accept("revision" + i));
+		}
+		assertEquals(100, callsSlowFilter.get());
+		assertSame(slowAcceptAll, planner.getPlan().get(0));
+
+		// Adaptive: the filter rejecting all revisions goes first
+		callsSlowFilter.set(0);
+		planner = new FilterPlanner<>(filters, true);
+		for (int i = 0; i < 100; i++) {
+			assertFalse(planner.accept("revision" + i));
+		}
+		assertSame(rejectAll, planner.getPlan().get(0));
+		assertTrue(callsSlowFilter.get() < 100);
+		assertEquals(filters, planner.getFilters());
+
+		// Short-circuit
+		filters = new ArrayList<>();
+		filters.add(rejectAll);
+		filters.add(slowAcceptAll);
+		callsSlowFilter.set(0);
+		planner = new FilterPlanner<>(filters, false);
+		assertFalse(planner.accept("revision"));
+		assertEquals(0, callsSlowFilter.get());
+	}
+
+	@Test
+	public void testFileCommitsComputedOncePerRevision() throws Exception {
+		ComingMain cm = new ComingMain();
+		FinalResult finalresult = cm.run(new String[] { "-location", "repogit4testv0" });
+		Map<Commit, RevisionResult> commits = finalresult.getAllResults();
+		CommitGit commit = (CommitGit) commits.keySet().stream().filter(e -> e.getName().equals(commitsId[1]))
+				.findFirst().get();
+
+		FileCommit first = commit.getFileCommits().get(0);
+		assertSame(first, commit.getFileCommits().get(0));
+		assertSame(commit.getJavaFileCommits().get(0), commit.getJavaFileCommits().get(0));
+
+		commit.release();
+		FileCommit recomputed = commit.getFileCommits().get(0);
+		assertNotSame(first, recomputed);
+		assertEquals(first.getFileName(), recomputed.getFileName());
+		assertEquals(first.getNextVersion(), recomputed.getNextVersion());
+	}
+
+	@Test
+	public void testIncludeExcludePaths() throws Exception {
+		ComingMain cm = new ComingMain();
+		FinalResult finalresult = cm
+				.run(new String[] { "-location", "repogit4testv0", "-includepath", "not/existing/path" });
+		assertTrue(finalresult.getAllResults().isEmpty());
+
+		finalresult = cm.run(new String[] { "-location", "repogit4testv0", "-excludepath", "not/existing/path" });
+		Map<Commit, RevisionResult> commits = finalresult.getAllResults();
+		assertEquals(commitsId.length, commits.size());
+
+		for (Commit commit : commits.keySet()) {
+			// Computed with the filter of java files inside the tree walk
+			List<String> javaFiles = new ArrayList<>();
+			commit.getJavaFileCommits().forEach(e -> javaFiles.add(e.getNextFileName() + e.getPreviousFileName()));
+			((CommitGit) commit).release();
+
+			List<String> expected = new ArrayList<>();
+			commit.getFileCommits().stream().filter(e -> e.getFileName().endsWith(".java"))
+					.forEach(e -> expected.add(e.getNextFileName() + e.getPreviousFileName()));
+			assertEquals(expected, javaFiles);
+		}
+	}
+
+	@Test
+	public void testHistoryNewestFirst() throws Exception {
+		ComingMain cm = new ComingMain();
+		FinalResult finalresult = cm
+				.run(new String[] { "-location", "repogit4testv0", "-parameters", "history_order:newest_first" });
+		Map<Commit, RevisionResult> commits = finalresult.getAllResults();
+		assertEquals(commitsId.length, commits.size());
+		int i = commitsId.length - 1;
+		for (Commit commit : commits.keySet()) {
+			assertEquals(commitsId[i], commit.getName());
+			i--;
+		}
+	}
+
+	@Test
+	public void testCommitRange() throws Exception {
+		ComingMain cm = new ComingMain();
+		FinalResult finalresult = cm.run(new String[] { "-location", "repogit4testv0", "-until", commitsId[4] });
+		Map<Commit, RevisionResult> commits = finalresult.getAllResults();
+		assertEquals(5, commits.size());
+		assertEquals(commitsId[0], commits.keySet().iterator().next().getName());
+
+		finalresult = cm.run(new String[] { "-location", "repogit4testv0", "-since", commitsId[4] });
+		commits = finalresult.getAllResults();
+		assertEquals(commitsId.length - 5, commits.size());
+		assertEquals(commitsId[5], commits.keySet().iterator().next().getName());
+	}
+
+	@Test
+	public void testIncrementalMining() throws Exception {
+		String output = Files.createTempDirectory("coming_incremental").toFile().getAbsolutePath();
+
+		ComingMain cm = new ComingMain();
+		FinalResult finalresult = cm.run(new String[] { "-location", "repogit4testv0", "-output", output,
+				"-incremental", "true", "-until", commitsId[6] });
+		assertEquals(7, finalresult.getAllResults().size());
+
+		finalresult = cm
+				.run(new String[] { "-location", "repogit4testv0", "-output", output, "-incremental", "true" });
+		Map<Commit, RevisionResult> commits = finalresult.getAllResults();
+		assertEquals(commitsId.length - 7, commits.size());
+		assertEquals(commitsId[7], commits.keySet().iterator().next().getName());
+
+		// Nothing new
+		finalresult = cm
+				.run(new String[] { "-location", "repogit4testv0", "-output", output, "-incremental", "true" });
+		assertTrue(finalresult.getAllResults().isEmpty());
+	}
+
+	@Test
+	public void testBlobCache() throws Exception {
+		RepositoryPGit repo = new RepositoryPGit("repogit4testv0", "master");
+		CommitGit commit = (CommitGit) repo.history().stream().filter(e -> e.getName().equals(commitsId[1]))
+				.findFirst().get();
+
+		RunSummary.reset();
+		List<FileCommit> files = commit.getFileCommits();
+		long misses = RunSummary.get(GitBlobLoader.MISSES);
+		long hits = RunSummary.get(GitBlobLoader.HITS);
+		assertTrue(misses > 0);
+
+		// All contents are now in the cache
+		commit.release();
+		List<FileCommit> filesAgain = commit.getFileCommits();
+		assertEquals(misses, RunSummary.get(GitBlobLoader.MISSES));
+		assertEquals(2 * hits + misses, RunSummary.get(GitBlobLoader.HITS));
+		assertEquals(files.size(), filesAgain.size());
+		for (int i = 0; i < files.size(); i++) {
+			assertEquals(files.get(i).getPreviousVersion(), filesAgain.get(i).getPreviousVersion());
+			assertEquals(files.get(i).getNextVersion(), filesAgain.get(i).getNextVersion());
+		}
+		repo.release();
+	}
+
+	@Test
+	public void testBatchMining() throws Exception {
+		File output = Files.createTempDirectory("coming_batch").toFile();
+		File manifest = new File(output, "repositories.txt");
+		Files.write(manifest.toPath(),
+				"# repositories to mine\nrepogit4testv0 master\n\nrepogit4testv0\nnotexistingrepo\n".getBytes());
+
+		ComingMain cm = new ComingMain();
+		FinalResult finalresult = cm.run(new String[] { "-batch", manifest.getAbsolutePath(), "-output",
+				output.getAbsolutePath(), "-mode", "diff", "-parameters", "batch_threads:2" });
+		assertNull(finalresult);
+
+		File summaryFile = new File(output, BatchMining.SUMMARY_FILE_NAME);
+		assertTrue(summaryFile.exists());
+		JsonObject summary = new JsonParser().parse(new String(Files.readAllBytes(summaryFile.toPath())))
+				.getAsJsonObject();
+		JsonArray repositories = summary.getAsJsonArray("repositories");
+		assertEquals(3, repositories.size());
+
+		// Each repository has its own output, and a failure does not stop the others
+		JsonObject first = repositories.get(0).getAsJsonObject();
+		JsonObject second = repositories.get(1).getAsJsonObject();
+		assertEquals("ok", first.get("status").getAsString());
+		assertEquals("ok", second.get("status").getAsString());
+		assertEquals(commitsId.length, first.get("revisions").getAsInt());
+		assertNotEquals(first.get("output").getAsString(), second.get("output").getAsString());
+		File firstFrequencies = new File(first.get("output").getAsString(), JSonChangeFrequencyOutput.FILE_NAME);
+		assertTrue(firstFrequencies.exists());
+
+		// The frequencies of the two copies of the repository are added
+		JSonChangeFrequencyOutput single = new JSonChangeFrequencyOutput();
+		single.readFrequencies(firstFrequencies);
+		JsonObject singleFrequency = single.getJSon().getAsJsonArray("frequency").get(0).getAsJsonObject();
+		int combined = 0;
+		for (JsonElement frequency : summary.getAsJsonArray("frequency")) {
+			if (frequency.getAsJsonObject().get("c").equals(singleFrequency.get("c")))
+				combined = frequency.getAsJsonObject().get("f").getAsInt();
+		}
+		assertEquals(2 * singleFrequency.get("f").getAsInt(), combined);
+
+		// The global properties are not modified by the repositories
+		assertNotEquals(output.getAbsolutePath(), ComingProperties.getProperty("output"));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void testCompactEditScripts() throws Exception {
+		ComingMain cm = new ComingMain();
+		FinalResult full = cm.run(new String[] { "-location", "repogit4testv0" });
+		FinalResult compact = cm.run(new String[] { "-location", "repogit4testv0", "-parameters",
+				"compact_edit_scripts:true:spill_result_revision_analysis:true:max_results_in_memory:1" });
+		// The edit scripts are serializable, so the results are stored on disk
+		assertEquals(0, compact.getStore().getNbNotSerializable());
+		assertTrue(compact.getStore().getNbStored() > 0);
+
+		Map<Commit, RevisionResult> fullCommits = full.getAllResults();
+		Map<Commit, RevisionResult> compactCommits = compact.getAllResults();
+		assertEquals(fullCommits.size(), compactCommits.size());
+		List<RevisionResult> compactResults = new ArrayList<>(compactCommits.values());
+		int i = 0;
+		for (RevisionResult fullResult : fullCommits.values()) {
+			Map<String, Diff> diffs = ((DiffResult<Commit, Diff>) fullResult
+					.getResultFromClass(FineGrainDifftAnalyzer.class)).getDiffOfFiles();
+			AnalysisResult compactResult = compactResults.get(i).getResultFromClass(FineGrainDifftAnalyzer.class);
+			assertTrue(compactResult instanceof EditScriptResult);
+			Map<String, EditScript> scripts = ((EditScriptResult<Commit>) compactResult).getEditScripts();
+			assertEquals(new ArrayList<>(diffs.keySet()), new ArrayList<>(scripts.keySet()));
+			for (String file : diffs.keySet()) {
+				EditScript script = scripts.get(file);
+				List<Operation> operations = diffs.get(file).getRootOperations();
+				assertEquals(operations.size(), script.getRootOperations().size());
+				assertEquals(diffs.get(file).getAllOperations().size(), script.getNbOperations());
+				for (int j = 0; j < operations.size(); j++) {
+					assertEquals(operations.get(j).getAction().getName(),
+							script.getRootOperations().get(j).getAction());
+					assertEquals(operations.get(j).getNode().getClass().getSimpleName(),
+							script.getRootOperations().get(j).getNodeType());
+				}
+			}
+			i++;
+		}
+
+		// Same frequencies from the diffs and from the edit scripts
+		JSonChangeFrequencyOutput fullFrequencies = new JSonChangeFrequencyOutput();
+		fullFrequencies.generateFinalOutput(full);
+		JSonChangeFrequencyOutput compactFrequencies = new JSonChangeFrequencyOutput();
+		compactFrequencies.generateFinalOutput(compact);
+		assertEquals(fullFrequencies.getJSon().get("frequencyParent"),
+				compactFrequencies.getJSon().get("frequencyParent"));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void testReleaseUnusedResults() throws Exception {
+		ComingMain cm = new ComingMain();
+		FinalResult full = cm.run(new String[] { "-location", "repogit4testv0" });
+		FinalResult released = cm.run(
+				new String[] { "-location", "repogit4testv0", "-parameters", "release_unused_results:true" });
+
+		Map<Commit, RevisionResult> fullCommits = full.getAllResults();
+		Map<Commit, RevisionResult> releasedCommits = released.getAllResults();
+		assertEquals(fullCommits.size(), releasedCommits.size());
+		for (RevisionResult releasedResult : releasedCommits.values()) {
+			// The outputs only read the summaries of the diffs
+			assertTrue(releasedResult.getResultFromClass(FineGrainDifftAnalyzer.class) instanceof EditScriptResult);
+		}
+
+		JSonChangeFrequencyOutput fullFrequencies = new JSonChangeFrequencyOutput();
+		fullFrequencies.generateFinalOutput(full);
+		JSonChangeFrequencyOutput releasedFrequencies = new JSonChangeFrequencyOutput();
+		releasedFrequencies.generateFinalOutput(released);
+		assertEquals(fullFrequencies.getJSon().get("frequencyParent"),
+				releasedFrequencies.getJSon().get("frequencyParent"));
+	}
+
+	@Test
+	public void testDiffCacheSkipsKeptPairs() throws Exception {
+		ComingMain cm = new ComingMain();
+		FinalResult full = cm.run(new String[] { "-location", "repogit4testv0" });
+		String folder = Files.createTempDirectory("coming_diff_cache").toFile().getAbsolutePath();
+		cm.run(new String[] { "-location", "repogit4testv0", "-parameters", "diff_cache_folder:" + folder });
+		assertTrue(RunSummary.get(DiffCache.MISSES) > 0);
+
+		// The outputs only read the summaries: no pair is compared again
+		FinalResult cached = cm
+				.run(new String[] { "-location", "repogit4testv0", "-parameters", "diff_cache_folder:" + folder });
+		assertEquals(0, RunSummary.get(DiffCache.MISSES));
+		assertEquals(0, RunSummary.get(DiffCache.RECOMPUTED));
+		assertTrue(RunSummary.get(DiffCache.HITS) > 0);
+
+		JSonChangeFrequencyOutput fullFrequencies = new JSonChangeFrequencyOutput();
+		fullFrequencies.generateFinalOutput(full);
+		JSonChangeFrequencyOutput cachedFrequencies = new JSonChangeFrequencyOutput();
+		cachedFrequencies.generateFinalOutput(cached);
+		assertEquals(fullFrequencies.getJSon().get("frequencyParent"),
+				cachedFrequencies.getJSon().get("frequencyParent"));
+		// The default matching is not recorded, so the outputs do not change
+		assertFalse(fullFrequencies.getJSon().has("matcher"));
+	}
+
 	@SuppressWarnings("unchecked")
 	@Test
 	public void testAssertCommitRemovedFile() throws Exception {
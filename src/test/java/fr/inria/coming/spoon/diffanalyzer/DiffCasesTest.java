@@ -1,28 +1,63 @@
 package fr.inria.coming.spoon.diffanalyzer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import fr.inria.coming.changeminer.analyzer.DiffCache;
+import fr.inria.coming.changeminer.analyzer.DiffEngineFacade;
+import fr.inria.coming.changeminer.analyzer.MatcherStrategy;
 import fr.inria.coming.changeminer.analyzer.commitAnalyzer.FineGrainDifftAnalyzer;
+import fr.inria.coming.changeminer.analyzer.commitAnalyzer.HunkDifftAnalyzer;
 import fr.inria.coming.changeminer.entity.CommitFinalResult;
+import fr.inria.coming.codefeatures.FeatureAnalyzer;
+import fr.inria.coming.core.engine.Analyzer;
+import fr.inria.coming.core.engine.ParseProfile;
 import fr.inria.coming.core.entities.DiffResult;
+import fr.inria.coming.core.entities.EditOperation;
+import fr.inria.coming.core.entities.EditScript;
 import fr.inria.coming.core.entities.RevisionResult;
 import fr.inria.coming.core.entities.interfaces.Commit;
+import fr.inria.coming.core.filter.diff.syntcomparison.JavaTokenComparator;
 import fr.inria.coming.main.ComingMain;
+import fr.inria.coming.main.ComingProperties;
+import fr.inria.coming.main.MatcherBenchmark;
+import fr.inria.coming.utils.RunSummary;
 import gumtree.spoon.AstComparator;
 import gumtree.spoon.diff.Diff;
 import gumtree.spoon.diff.operations.InsertOperation;
 import gumtree.spoon.diff.operations.Operation;
+import spoon.reflect.code.CtComment;
+import spoon.reflect.declaration.CtClass;
+import spoon.reflect.declaration.CtElement;
 
 /**
  * 
@@ -236,6 +271,388 @@ public class DiffCasesTest {
 
 	}
 
+	@Test
+	public void testDiffCache() throws Exception {
+		String contentLeft = "" + "class X {" + "public Object foo() {" + " Integer.toString(10);"
+				+ " int a = 1,b = 1,c = 1,d = 1; " + "a = a + b / c +d ; " + " return null;" + "}};";
+
+		// Only the format changes
+		String contentFormatted = "" + "class X {\n" + "public Object foo() {\n" + " Integer.toString(10);\n"
+				+ " int a = 1,b = 1,c = 1,d = 1;\n" + "a = a + b / c + d;\n" + " return null;\n" + "}};";
+
+		String contentRigh = "" + "class X {" + "public Object foo() {" + " Integer.toString(10);"
+				+ " int a = 1,b = 1,c = 1,d = 1; " + " a = a + b / c + d ; b = 0; " + " return null;" + "}};";
+
+		File folder = Files.createTempDirectory("coming_diff_cache").toFile();
+		FineGrainDifftAnalyzer fineGrainAnalyzer = new FineGrainDifftAnalyzer();
+		fineGrainAnalyzer.setDiffCache(DiffCache.getCache(folder));
+		DiffCache cache = fineGrainAnalyzer.getDiffCache();
+		RunSummary.reset();
+
+		assertNull(fineGrainAnalyzer.compare(contentLeft, contentFormatted));
+		assertEquals(1, RunSummary.get(DiffCache.MISSES));
+		assertEquals(0, cache.get(cache.getKey(contentLeft, contentFormatted)).getNbRootOperations());
+		assertFalse(cache.get(cache.getKey(contentLeft, contentFormatted)).hasEditScript());
+		assertTrue(folder.listFiles().length > 0);
+
+		// The discarded pair is not parsed again
+		assertNull(fineGrainAnalyzer.compare(contentLeft, contentFormatted));
+		assertEquals(1, RunSummary.get(DiffCache.HITS));
+		assertEquals(1, RunSummary.get(DiffCache.MISSES));
+
+		// A kept diff is computed again on a hit, so the analyzers get its AST
+		Diff diff = fineGrainAnalyzer.compare(contentLeft, contentRigh);
+		int nbOperations = diff.getRootOperations().size();
+		assertEquals(nbOperations, cache.get(cache.getKey(contentLeft, contentRigh)).getNbRootOperations());
+		assertEquals(2, RunSummary.get(DiffCache.MISSES));
+		diff = fineGrainAnalyzer.compare(contentLeft, contentRigh);
+		assertEquals(nbOperations, diff.getRootOperations().size());
+		assertEquals(2, RunSummary.get(DiffCache.HITS));
+		assertEquals(1, RunSummary.get(DiffCache.RECOMPUTED));
+		assertEquals(2, RunSummary.get(DiffCache.MISSES));
+
+		// The edit script of a kept diff is read from the cache, without parsing
+		RunSummary.reset();
+		EditScript script = fineGrainAnalyzer.summarize(contentLeft, contentRigh, "leftFile", "rightFile");
+		assertEquals(1, RunSummary.get(DiffCache.HITS));
+		assertEquals(0, RunSummary.get(DiffCache.MISSES));
+		assertEquals(nbOperations, script.getRootOperations().size());
+		assertEquals(diff.getAllOperations().size(), script.getNbOperations());
+		for (int i = 0; i < nbOperations; i++) {
+			assertEquals(diff.getRootOperations().get(i).getAction().getName(),
+					script.getRootOperations().get(i).getAction());
+		}
+		// Also by another execution using the same folder
+		assertEquals(nbOperations, new DiffCache(folder) {
+		}.getEditScript(cache.getKey(contentLeft, contentRigh)).getRootOperations().size());
+
+		// The key depends on the configuration of the matching
+		String key = cache.getKey(contentLeft, contentRigh);
+		System.setProperty("gt.bum.smt", "0.3");
+		try {
+			assertNotEquals(key, cache.getKey(contentLeft, contentRigh));
+		} finally {
+			System.clearProperty("gt.bum.smt");
+		}
+	}
+
+	@Test
+	public void testParsedAstCache() throws Exception {
+		String content1 = "" + "class X {" + "public Object foo() {" + " Integer.toString(10);"
+				+ " int a = 1,b = 1,c = 1,d = 1; " + "a = a + b / c +d ; " + " return null;" + "}};";
+
+		String content2 = "" + "class X {" + "public Object foo() {" + " Integer.toString(10);"
+				+ " int a = 1,b = 1,c = 1,d = 1; " + " a = a + b / c + d ; b = 0; " + " return null;" + "}};";
+
+		String content3 = "" + "class X {" + "public Object foo() {" + " Integer.toString(10);"
+				+ " int a = 1,b = 1,c = 1,d = 1; " + " a = a + b / c + d ; b = 0; " + " return a;" + "}};";
+
+		DiffEngineFacade cached = new DiffEngineFacade(10);
+		DiffEngineFacade notCached = new DiffEngineFacade(0);
+		RunSummary.reset();
+
+		Diff diff1 = cached.compareContent(content1, content2, "X.java", "X.java");
+		assertEquals(2, RunSummary.get(DiffEngineFacade.MISSES));
+		assertEquals(0, RunSummary.get(DiffEngineFacade.HITS));
+
+		// The right version is the left one of the next commit
+		Diff diff2 = cached.compareContent(content2, content3, "X.java", "X.java");
+		assertEquals(3, RunSummary.get(DiffEngineFacade.MISSES));
+		assertEquals(1, RunSummary.get(DiffEngineFacade.HITS));
+
+		assertEquals(notCached.compareContent(content1, content2, "X.java", "X.java").getRootOperations().toString(),
+				diff1.getRootOperations().toString());
+		assertEquals(notCached.compareContent(content2, content3, "X.java", "X.java").getRootOperations().toString(),
+				diff2.getRootOperations().toString());
+
+		// Same content in both sides
+		assertTrue(cached.compareContent(content3, content3, "X.java", "X.java").getRootOperations().isEmpty());
+	}
+
+	@Test
+	public void testParsedAstCacheKeepsPreviousDiffs() throws Exception {
+		String content1 = "" + "class X {" + "public Object foo() {" + " Integer.toString(10);"
+				+ " int a = 1,b = 1,c = 1,d = 1; " + "a = a + b / c +d ; " + " return null;" + "}};";
+
+		String content2 = "" + "class X {" + "public Object foo() {" + " Integer.toString(10);"
+				+ " int a = 1,b = 1,c = 1,d = 1; " + " a = a + b / c + d ; b = 0; " + " return null;" + "}};";
+
+		String content3 = "" + "class X {" + "public Object foo() {" + " Integer.toString(10);"
+				+ " int a = 1,b = 1,c = 1,d = 1; " + " a = a + b / c + d ; b = 0; " + " return a;" + "}};";
+
+		DiffEngineFacade cached = new DiffEngineFacade(10);
+		RunSummary.reset();
+
+		Diff diff1 = cached.compareContent(content1, content2, "X.java", "X.java");
+		// The inserted statement is in the model of content2
+		CtElement inserted = diff1.getRootOperations().stream().filter(e -> e instanceof InsertOperation)
+				.findFirst().get().getNode();
+		Object treeInDiff1 = inserted.getMetadata("gtnode");
+		assertNotNull(treeInDiff1);
+
+		// content2 is read from the cache, and compared again
+		Diff diff2 = cached.compareContent(content2, content3, "X.java", "X.java");
+		assertEquals(1, RunSummary.get(DiffEngineFacade.HITS));
+		assertTrue(diff2.getRootOperations().size() > 0);
+		assertSame(treeInDiff1, inserted.getMetadata("gtnode"));
+		assertEquals(inserted.toString(), diff1.getRootOperations().stream()
+				.filter(e -> e instanceof InsertOperation).findFirst().get().getNode().toString());
+	}
+
+	@Test
+	public void testDiffPreChecks() throws Exception {
+		String contentLeft = "" + "class X {\n" + "public Object foo() {\n" + " Integer.toString(10);\n"
+				+ " int a = 1,b = 1,c = 1,d = 1;\n" + "a = a + b / c +d ;\n" + " return null;\n" + "}};";
+
+		String contentRigh = "" + "class X {\n" + "public Object foo() {\n" + " Integer.toString(10);\n"
+				+ " int a = 1,b = 1,c = 1,d = 1;\n" + " a = a + b / c + d ;\n b = 0;\n" + " return null;\n" + "}};";
+
+		RunSummary.reset();
+		try {
+			ComingProperties.setProperty("max_changed_lines", "2");
+			assertNull(new FineGrainDifftAnalyzer().compare(contentLeft, contentRigh));
+			assertEquals(1, RunSummary.get(FineGrainDifftAnalyzer.SKIPPED_LINES));
+
+			ComingProperties.setProperty("max_estimated_nodes", "10");
+			assertNull(new FineGrainDifftAnalyzer().compare(contentLeft, contentRigh));
+			assertEquals(1, RunSummary.get(FineGrainDifftAnalyzer.SKIPPED_NODES));
+
+			ComingProperties.setProperty("max_file_length", "50");
+			assertNull(new FineGrainDifftAnalyzer().compare(contentLeft, contentRigh));
+			assertEquals(1, RunSummary.get(FineGrainDifftAnalyzer.SKIPPED_LENGTH));
+		} finally {
+			ComingProperties.reset();
+		}
+
+		// With the default limits, the pair is compared
+		Diff diff = new FineGrainDifftAnalyzer().compare(contentLeft, contentRigh);
+		assertTrue(diff.getRootOperations().size() > 0);
+		assertEquals(0, RunSummary.get(FineGrainDifftAnalyzer.TIMEOUTS));
+	}
+
+	@Test
+	public void testDiffDeadline() throws Exception {
+		class DeadlineAnalyzer extends FineGrainDifftAnalyzer {
+			Diff run(Callable<Diff> comparison, int timeout) throws Exception {
+				return runWithDeadline(comparison, timeout);
+			}
+		}
+		DeadlineAnalyzer analyzer = new DeadlineAnalyzer();
+		AtomicBoolean interrupted = new AtomicBoolean(false);
+
+		// The caller stops waiting when the deadline expires, and the comparison is
+		// interrupted
+		long start = System.nanoTime();
+		try {
+			analyzer.run(() -> {
+				try {
+					Thread.sleep(10000);
+				} catch (InterruptedException e) {
+					interrupted.set(true);
+					throw e;
+				}
+				return null;
+			}, 1);
+			fail("The deadline expired");
+		} catch (TimeoutException e) {
+			// Expected
+		}
+		assertTrue(System.nanoTime() - start < 5000000000L);
+		Thread.sleep(200);
+		assertTrue(interrupted.get());
+
+		// A comparison finished before its deadline is returned
+		String contentLeft = "class X {\n" + "public Object foo() {\n" + " return null;\n" + "}\n" + "}";
+		String contentRight = "class X {\n" + "public Object foo() {\n" + " return 1;\n" + "}\n" + "}";
+		DiffEngineFacade engine = new DiffEngineFacade();
+		Diff diff = analyzer.run(() -> engine.compareContent(contentLeft, contentRight, "X.java", "X.java"), 30);
+		assertTrue(diff.getRootOperations().size() > 0);
+	}
+
+	@Test
+	public void testScopedDiff() throws Exception {
+		String contentLeft = "class X {\n" + "int f = 0;\n" + "public Object foo() {\n" + " Integer.toString(10);\n"
+				+ " int a = 1,b = 1,c = 1,d = 1;\n" + " a = a + b / c + d;\n" + " return null;\n" + "}\n"
+				+ "public int bar(int i) {\n" + " return i + 1;\n" + "}\n" + "}";
+
+		// Change in the body of a method
+		String contentMethod = "class X {\n" + "int f = 0;\n" + "public Object foo() {\n" + " Integer.toString(10);\n"
+				+ " int a = 1,b = 1,c = 1,d = 1;\n" + " a = a + b / c + d;\n b = 0;\n" + " return null;\n" + "}\n"
+				+ "public int bar(int i) {\n" + " return i + 1;\n" + "}\n" + "}";
+
+		// Change in a field
+		String contentField = "class X {\n" + "int f = 1;\n" + "public Object foo() {\n" + " Integer.toString(10);\n"
+				+ " int a = 1,b = 1,c = 1,d = 1;\n" + " a = a + b / c + d;\n" + " return null;\n" + "}\n"
+				+ "public int bar(int i) {\n" + " return i + 1;\n" + "}\n" + "}";
+
+		DiffEngineFacade scoped = new DiffEngineFacade(0);
+		scoped.setScoped(true);
+		DiffEngineFacade whole = new DiffEngineFacade(0);
+		RunSummary.reset();
+
+		Diff scopedDiff = scoped.compareContent(contentLeft, contentMethod, "X.java", "X.java");
+		assertEquals(1, RunSummary.get(DiffEngineFacade.SCOPED));
+		Diff wholeDiff = whole.compareContent(contentLeft, contentMethod, "X.java", "X.java");
+		assertEquals(1, scopedDiff.getRootOperations().size());
+		assertEquals(wholeDiff.getRootOperations().toString(), scopedDiff.getRootOperations().toString());
+		// The changed node is in the model of the whole file
+		assertNotNull(scopedDiff.getRootOperations().get(0).getNode().getParent(CtClass.class));
+
+		// Fallback to the whole files
+		scopedDiff = scoped.compareContent(contentLeft, contentField, "X.java", "X.java");
+		assertEquals(1, RunSummary.get(DiffEngineFacade.NOT_SCOPED));
+		wholeDiff = whole.compareContent(contentLeft, contentField, "X.java", "X.java");
+		assertEquals(wholeDiff.getRootOperations().toString(), scopedDiff.getRootOperations().toString());
+	}
+
+	@Test
+	public void testNonSemanticChangesSkipped() throws Exception {
+		String contentLeft = "package p;\n" + "import java.util.List;\n" + "import java.util.Map;\n" + "class X {\n"
+				+ "public Object foo() {\n" + " Integer.toString(10);\n" + " return null;\n" + "}\n" + "}";
+
+		// Formatting, comments and order of the imports
+		String contentFormatted = "package p;\n" + "import java.util.Map;\n" + "import java.util.List;\n"
+				+ "/** A class */\n" + "class X\n{\n" + "  public Object foo() {\n" + "    // to string\n"
+				+ "    Integer.toString( 10 );\n" + "    return null;\n" + "  }\n" + "}";
+
+		String contentChanged = "package p;\n" + "import java.util.List;\n" + "import java.util.Map;\n" + "class X {\n"
+				+ "public Object foo() {\n" + " Integer.toString(11);\n" + " return null;\n" + "}\n" + "}";
+
+		JavaTokenComparator tokenComparator = new JavaTokenComparator();
+		assertTrue(tokenComparator.haveSameTokens(contentLeft, contentFormatted));
+		assertFalse(tokenComparator.haveSameTokens(contentLeft, contentChanged));
+
+		RunSummary.reset();
+		ComingProperties.setProperty("skip_non_semantic_changes", "true");
+		FineGrainDifftAnalyzer fineGrainAnalyzer = new FineGrainDifftAnalyzer();
+		ComingProperties.reset();
+		assertNull(fineGrainAnalyzer.compare(contentLeft, contentFormatted));
+		assertEquals(1, RunSummary.get(FineGrainDifftAnalyzer.SKIPPED_NON_SEMANTIC));
+
+		Diff diff = fineGrainAnalyzer.compare(contentLeft, contentChanged);
+		assertEquals(1, diff.getRootOperations().size());
+		assertEquals(1, RunSummary.get(FineGrainDifftAnalyzer.SKIPPED_NON_SEMANTIC));
+	}
+
+	@Test
+	public void testMatcherStrategy() throws Exception {
+		File corpus = new File("src/main/resources/Defects4J_all_pairs/Chart_1");
+		File output = Files.createTempDirectory("matcherbenchmark").toFile();
+		new DiffEngineFacade();
+		assertEquals(MatcherStrategy.CLASSIC, MatcherStrategy.getCurrent());
+		try {
+			// The matchers of this JVM are already loaded with the classic strategy
+			ComingProperties.setProperty("matcher_strategy", "fast");
+			assertEquals(MatcherStrategy.FAST, MatcherStrategy.getSelected());
+			new DiffEngineFacade();
+			fail("The fast strategy cannot be applied");
+		} catch (IllegalStateException e) {
+			// Expected
+		} finally {
+			ComingProperties.reset();
+		}
+		assertEquals(MatcherStrategy.CLASSIC, MatcherStrategy.getCurrent());
+		assertEquals("classic", MatcherStrategy.getCurrentJson().get("strategy").getAsString());
+		// The outputs of the default matching do not record it
+		assertTrue(MatcherStrategy.isDefault());
+
+		// Each strategy is measured in its own JVM
+		MatcherBenchmark benchmark = new MatcherBenchmark();
+		benchmark.setWarmup(1);
+		JsonObject result = benchmark.run(corpus, output,
+				Arrays.asList(MatcherStrategy.CLASSIC, MatcherStrategy.TOPDOWN));
+		assertTrue(new File(output, MatcherBenchmark.FILE_NAME).exists());
+		JsonArray strategies = result.getAsJsonArray("strategies");
+		assertEquals(2, strategies.size());
+		for (JsonElement strategy : strategies) {
+			assertEquals(1, strategy.getAsJsonObject().get("pairs").getAsInt());
+			assertEquals(0, strategy.getAsJsonObject().get("failed").getAsInt());
+			assertTrue(strategy.getAsJsonObject().get("root_operations").getAsInt() > 0);
+		}
+		JsonObject topdown = strategies.get(1).getAsJsonObject();
+		assertEquals("topdown", topdown.get("strategy").getAsString());
+		assertEquals(0, topdown.get("gt.bum.szt").getAsInt());
+		assertEquals(MatcherStrategy.CLASSIC, MatcherStrategy.getCurrent());
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Test
+	public void testLeanParseProfile() throws Exception {
+		String contentLeft = "class X {\n" + "public Object foo() {\n" + " Integer.toString(10);\n" + " return null;\n"
+				+ "}\n" + "}";
+		// One change in the code and one comment added
+		String contentRight = "class X {\n" + "public Object foo() {\n" + " // to string\n" + " Integer.toString(11);\n"
+				+ " return null;\n" + "}\n" + "}";
+
+		RunSummary.reset();
+		DiffEngineFacade facade = new DiffEngineFacade(10);
+		Diff fullDiff = facade.compareContent(contentLeft, contentRight, "X.java", "X.java");
+		assertTrue(fullDiff.getRootOperations().stream().anyMatch(op -> op.getNode() instanceof CtComment));
+
+		facade.setParseProfile(ParseProfile.LEAN);
+		Diff leanDiff = facade.compareContent(contentLeft, contentRight, "X.java", "X.java");
+		assertEquals(1, leanDiff.getRootOperations().size());
+		assertFalse(leanDiff.getRootOperations().get(0).getNode() instanceof CtComment);
+		assertEquals(2, RunSummary.get(String.format(DiffEngineFacade.PARSED, "lean")));
+		assertEquals(2, RunSummary.get(String.format(DiffEngineFacade.PARSED, "full")));
+
+		// The profile is selected from the needs of the analyzers
+		List<Analyzer> analyzers = new ArrayList<>();
+		analyzers.add(new FineGrainDifftAnalyzer());
+		analyzers.add(new HunkDifftAnalyzer());
+		assertEquals(ParseProfile.LEAN, ParseProfile.select(analyzers));
+		analyzers.add(new FeatureAnalyzer());
+		assertEquals(ParseProfile.FULL, ParseProfile.select(analyzers));
+		try {
+			ComingProperties.setProperty("parse_profile", "lean");
+			assertEquals(ParseProfile.LEAN, ParseProfile.select(analyzers));
+		} finally {
+			ComingProperties.reset();
+		}
+	}
+
+	@Test
+	public void testEditScriptSerialization() throws Exception {
+		String contentLeft = "class X {\n" + "public Object foo() {\n" + " Integer.toString(10);\n" + " return null;\n"
+				+ "}\n" + "}";
+		String contentRight = "class X {\n" + "public Object foo() {\n" + " Integer.toString(11);\n"
+				+ " System.out.println(\"\u00e9\");\n" + " return null;\n" + "}\n" + "}";
+		Diff diff = new AstComparator().compare(contentLeft, contentRight);
+		EditScript script = EditScript.fromDiff(diff);
+		assertEquals(diff.getRootOperations().size(), script.getRootOperations().size());
+		assertEquals(diff.getAllOperations().size(), script.getNbOperations());
+
+		EditOperation update = script.getRootOperations().stream().filter(op -> op.getAction().equals("UPD"))
+				.findFirst().get();
+		assertEquals("10", update.getLabel());
+		assertEquals("11", update.getNewLabel());
+		assertEquals(3, update.getLine());
+
+		byte[] bytes = script.toBytes();
+		assertTrue(bytes.length < 200);
+		EditScript read = EditScript.fromBytes(bytes);
+		assertEquals(script.toString(), read.toString());
+		assertEquals(script.getNbOperations(), read.getNbOperations());
+		for (int i = 0; i < script.getRootOperations().size(); i++) {
+			EditOperation operation = script.getRootOperations().get(i);
+			EditOperation readOperation = read.getRootOperations().get(i);
+			assertEquals(operation.getParentType(), readOperation.getParentType());
+			assertEquals(operation.getNewLabel(), readOperation.getNewLabel());
+			assertEquals(operation.getEndLine(), readOperation.getEndLine());
+			assertEquals(operation.getSourceStart(), readOperation.getSourceStart());
+			assertEquals(operation.getSourceEnd(), readOperation.getSourceEnd());
+		}
+
+		// Java serialization uses the same format
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (ObjectOutputStream objects = new ObjectOutputStream(out)) {
+			objects.writeObject(script);
+		}
+		try (ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+			assertEquals(script.toString(), objects.readObject().toString());
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	@Test
 	public void testNameFileGit() throws Exception {
@@ -3,10 +3,12 @@ package fr.inria.coming.spoon.patterns;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.nio.file.Files;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
@@ -19,6 +21,7 @@ import fr.inria.coming.changeminer.analyzer.commitAnalyzer.FineGrainDifftAnalyze
 import fr.inria.coming.changeminer.analyzer.instancedetector.ChangePatternInstance;
 import fr.inria.coming.changeminer.analyzer.instancedetector.DetectorChangePatternInstanceEngine;
 import fr.inria.coming.changeminer.analyzer.instancedetector.MegaDiff;
+import fr.inria.coming.changeminer.analyzer.instancedetector.PatternCountsFromRevision;
 import fr.inria.coming.changeminer.analyzer.instancedetector.PatternInstanceAnalyzer;
 import fr.inria.coming.changeminer.analyzer.instancedetector.PatternInstancesFromDiff;
 import fr.inria.coming.changeminer.analyzer.instancedetector.PatternInstancesFromRevision;
@@ -33,7 +36,9 @@ import fr.inria.coming.changeminer.util.PatternXMLParser;
 import fr.inria.coming.core.entities.DiffResult;
 import fr.inria.coming.core.entities.RevisionResult;
 import fr.inria.coming.core.entities.interfaces.Commit;
+import fr.inria.coming.core.entities.output.PatternCountOutput;
 import fr.inria.coming.main.ComingMain;
+import fr.inria.coming.main.ComingProperties;
 import fr.inria.coming.utils.CommandSummary;
 import gumtree.spoon.AstComparator;
 import gumtree.spoon.diff.Diff;
@@ -796,4 +801,54 @@ public class InstanceMiningTest {
 		List<ChangePatternInstance> instances = detector.findPatternInstances(pattern, md);
 		assertTrue(instances.size() > 0);
 	}
+
+	@Test
+	public void testPatternMiningModes() throws Exception {
+		ComingMain main = new ComingMain();
+
+		CommandSummary cs = new CommandSummary();
+		cs.append("-location", "repogit4testv0");
+		cs.append("-mode", "mineinstance");
+		File fl1 = new File(getClass().getResource("/pattern_specification/pattern_test_1_INS_INV.xml").getFile());
+		File fl2 = new File(getClass().getResource("/pattern_specification/pattern_INS_IF_RET.xml").getFile());
+		cs.command.put("-pattern", fl1.getAbsolutePath() + File.pathSeparator + fl2.getAbsolutePath());
+
+		CommitFinalResult instancesResult = (CommitFinalResult) main.run(cs.flat());
+		cs.command.put("-parameters", "pattern_mining_mode:count");
+		CommitFinalResult countResult = (CommitFinalResult) main.run(cs.flat());
+		cs.command.put("-parameters", "pattern_mining_mode:exists");
+		CommitFinalResult existsResult = (CommitFinalResult) main.run(cs.flat());
+
+		assertEquals(instancesResult.getAllResults().size(), countResult.getAllResults().size());
+		int nbFound = 0;
+		for (Commit commit : instancesResult.getAllResults().keySet()) {
+			PatternInstancesFromRevision instances = (PatternInstancesFromRevision) instancesResult.getAllResults()
+					.get(commit).getResultFromClass(PatternInstanceAnalyzer.class);
+			PatternCountsFromRevision counts = (PatternCountsFromRevision) countResult.getAllResults().get(commit)
+					.getResultFromClass(PatternInstanceAnalyzer.class);
+			PatternCountsFromRevision exists = (PatternCountsFromRevision) existsResult.getAllResults().get(commit)
+					.getResultFromClass(PatternInstanceAnalyzer.class);
+			if (instances == null) {
+				assertNull(counts);
+				continue;
+			}
+
+			for (int i = 0; i < counts.getPatterns().size(); i++) {
+				String name = counts.getPatterns().get(i).getName();
+				long expected = instances.getInfoPerDiff().stream().flatMap(e -> e.getInstances().stream())
+						.filter(e -> e.getPattern().getName().equals(name)).count();
+				assertEquals(expected, counts.getCounts()[i]);
+				assertEquals((expected > 0) ? 1 : 0, exists.getCounts()[i]);
+				nbFound += counts.getCounts()[i];
+			}
+		}
+		assertTrue(nbFound > 0);
+
+		// The table of the last run
+		File table = new File(ComingProperties.getProperty("output"), PatternCountOutput.FILE_NAME + ".csv");
+		assertTrue(table.exists());
+		List<String> lines = Files.readAllLines(table.toPath());
+		assertEquals("revision,INS_INV,INS_IF_RET", lines.get(0));
+		assertTrue(lines.size() > 1);
+	}
 }
@@ -4,9 +4,11 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.log4j.ConsoleAppender;
@@ -19,8 +21,12 @@ import org.junit.Test;
 
 import fr.inria.coming.changeminer.analyzer.commitAnalyzer.FineGrainDifftAnalyzer;
 import fr.inria.coming.changeminer.analyzer.instancedetector.ChangePatternInstance;
+import fr.inria.coming.changeminer.analyzer.instancedetector.CompiledPatternMatcher;
 import fr.inria.coming.changeminer.analyzer.instancedetector.DetectorChangePatternInstanceEngine;
 import fr.inria.coming.changeminer.analyzer.instancedetector.MatchingAction;
+import fr.inria.coming.changeminer.analyzer.instancedetector.NodeSignature;
+import fr.inria.coming.changeminer.analyzer.instancedetector.NodeSignatureCache;
+import fr.inria.coming.changeminer.analyzer.instancedetector.OperationIndex;
 import fr.inria.coming.changeminer.analyzer.instancedetector.ResultMapping;
 import fr.inria.coming.changeminer.analyzer.patternspecification.ChangePatternSpecification;
 import fr.inria.coming.changeminer.analyzer.patternspecification.EntityRelation;
@@ -30,6 +36,7 @@ import fr.inria.coming.changeminer.analyzer.patternspecification.PatternEntity;
 import fr.inria.coming.changeminer.analyzer.patternspecification.PatternRelations;
 import fr.inria.coming.changeminer.entity.ActionType;
 import fr.inria.coming.changeminer.util.PatternXMLParser;
+import fr.inria.coming.main.ComingProperties;
 import gumtree.spoon.diff.Diff;
 import gumtree.spoon.diff.operations.Operation;
 import gumtree.spoon.diff.operations.UpdateOperation;
@@ -917,6 +924,113 @@ public class PatternMatchingTest {
 
 	}
 
+	@Test
+	public void testOperationIndex() throws Exception {
+		OperationIndex index = new OperationIndex(diffInsert);
+		List<Operation> operations = diffInsert.getAllOperations();
+		assertEquals(operations, index.getCandidates(ActionType.ANY, "*"));
+		assertTrue(index.getCandidates(ActionType.INS, "NotAnEntity").isEmpty());
+
+		for (ActionType type : new ActionType[] { ActionType.INS, ActionType.DEL, ActionType.UPD, ActionType.MOV }) {
+			List<Operation> ofType = index.getCandidates(type, "*");
+			for (Operation operation : operations) {
+				boolean sameType = type == OperationIndex.getActionType(operation.getAction());
+				assertEquals(sameType, ofType.contains(operation));
+				String label = OperationIndex.getNodeLabel(operation.getNode());
+				assertEquals(sameType, index.getCandidates(type, label).contains(operation));
+				assertTrue(index.getCandidates(ActionType.ANY, label).contains(operation));
+			}
+		}
+	}
+
+	@Test
+	public void testEnumerateValidInstances() throws Exception {
+		File s = getFile("patterns_examples/case4/1205753_EmbedPooledConnection_0_s.java");
+		File t = getFile("patterns_examples/case4/1205753_EmbedPooledConnection_0_t.java");
+		FineGrainDifftAnalyzer r = new FineGrainDifftAnalyzer();
+		Diff diff2Inserts = r.getDiff(s, t);
+
+		ChangePatternSpecification pattern = new ChangePatternSpecification();
+		PatternEntity entityIf = new PatternEntity("If");
+		PatternEntity entityAssignement = new PatternEntity("Assignment", new ParentPatternEntity(entityIf, 3));
+		pattern.addChange(new PatternAction(entityAssignement, ActionType.INS));
+		pattern.addChange(new PatternAction(entityIf, ActionType.INS));
+
+		DetectorChangePatternInstanceEngine detector = new DetectorChangePatternInstanceEngine();
+		ResultMapping mappings = detector.mappingActions(pattern, diff2Inserts);
+
+		// Same instances than filtering all the combinations
+		PatternRelations relations = pattern.calculateRelations();
+		List<ChangePatternInstance> expected = new ArrayList<>();
+		for (ChangePatternInstance instance : detector.allCombinations(pattern, mappings.getMappings())) {
+			if (detector.validate(instance) && detector.checkPatternRelationsOnInstance(instance, relations))
+				expected.add(instance);
+		}
+		List<ChangePatternInstance> instances = detector.enumerateValidInstances(pattern, mappings.getMappings());
+		assertEquals(2, instances.size());
+		assertEquals(expected.size(), instances.size());
+		for (int i = 0; i < instances.size(); i++) {
+			assertEquals(expected.get(i).getActions(), instances.get(i).getActions());
+		}
+
+		ComingProperties.setProperty("max_instances_per_diff", "1");
+		try {
+			instances = detector.enumerateValidInstances(pattern, mappings.getMappings());
+			assertEquals(1, instances.size());
+			assertEquals(expected.get(0).getActions(), instances.get(0).getActions());
+		} finally {
+			ComingProperties.reset();
+		}
+	}
+
+	@Test
+	public void testCompiledPatternMatcher() throws Exception {
+		List<ChangePatternSpecification> patterns = new ArrayList<>();
+		for (File fl : getFile("pattern_specification").listFiles()) {
+			patterns.add(PatternXMLParser.parseFile(fl.getAbsolutePath()));
+		}
+		CompiledPatternMatcher matcher = new CompiledPatternMatcher(patterns);
+		// Some actions are shared by several patterns
+		assertTrue(matcher.getNbPredicates() < patterns.stream().mapToInt(e -> e.getAbstractChanges().size()).sum());
+
+		DetectorChangePatternInstanceEngine detector = new DetectorChangePatternInstanceEngine();
+		int nbInstances = 0;
+		for (String example : new String[] { "case1", "case2", "case3", "case4", "case5" }) {
+			File s = getFile("patterns_examples/" + example + "/1205753_EmbedPooledConnection_0_s.java");
+			File t = getFile("patterns_examples/" + example + "/1205753_EmbedPooledConnection_0_t.java");
+			Diff diff = new FineGrainDifftAnalyzer().getDiff(s, t);
+
+			// The same instances than mining each pattern separately
+			List<List<ChangePatternInstance>> instances = matcher.findPatternInstances(diff);
+			assertEquals(patterns.size(), instances.size());
+			for (int i = 0; i < patterns.size(); i++) {
+				List<ChangePatternInstance> expected = detector.findPatternInstances(patterns.get(i), diff);
+				assertEquals(expected.size(), instances.get(i).size());
+				for (int j = 0; j < expected.size(); j++) {
+					assertEquals(expected.get(j).getActions(), instances.get(i).get(j).getActions());
+					assertEquals(expected.get(j).getActionOperation(), instances.get(i).get(j).getActionOperation());
+				}
+				nbInstances += expected.size();
+			}
+		}
+		assertTrue(nbInstances > 0);
+	}
+
+	@Test
+	public void testNodeSignatureCache() throws Exception {
+		NodeSignatureCache signatures = new NodeSignatureCache();
+		CtElement node = diffInsert.getRootOperations().get(0).getNode();
+		NodeSignature signature = signatures.get(node);
+		// One signature per node
+		assertSame(signature, signatures.get(node));
+		signatures.get(node.getParent());
+		assertEquals(2, signatures.size());
+
+		assertEquals(new DetectorChangePatternInstanceEngine().getNodeLabelFromCtElement(node), signature.getLabel());
+		assertEquals(node.getRoleInParent().toString().toLowerCase(), signature.getRoleInParent());
+		assertEquals(node.toString(), signature.getValue());
+	}
+
 	public void assertPattern(Diff diffToAnalyze, ChangePatternSpecification pattern) {
 		DetectorChangePatternInstanceEngine detector = new DetectorChangePatternInstanceEngine();
 		ResultMapping mappings = detector.mappingActions(pattern, diffToAnalyze);